@@ -16,6 +16,7 @@ public class BPConfig
     private boolean useUUIDs;
     private boolean useRegexPerms;
     private boolean groupPermission;
+    private int permCheckCacheSize;
 
     //db
     private BackEndType backEndType;
@@ -24,6 +25,11 @@ public class BPConfig
     private int fetcherCooldown;
     private boolean saveAllUsers;
     private boolean deleteUsersOnCleanup;
+    private int yamlFlushInterval;
+    private int yamlMaxUnsaved;
+    private int offlineLookupSize;
+    private int offlineLookupTTL;
+    private int offlineLookupNegativeTTL;
 
     //fancy ingame
     private boolean notifyPromote;
@@ -59,6 +65,7 @@ public class BPConfig
         useUUIDs = config.getBoolean("useUUIDs", false);
         useRegexPerms = config.getBoolean("useregexperms", false);
         groupPermission = config.getBoolean("grouppermission", true);
+        permCheckCacheSize = config.getInt("permcheckcachesize", 2000);
 
         //db
         backEndType = config.getEnumValue("backendtype", BackEndType.YAML);
@@ -67,6 +74,11 @@ public class BPConfig
         fetcherCooldown = config.getInt("uuidfetcher.cooldown", 3000);
         saveAllUsers = config.getBoolean("saveAllUsers", true);
         deleteUsersOnCleanup = config.getBoolean("deleteUsersOnCleanup", false);
+        yamlFlushInterval = config.getInt("yaml.flushinterval", 1000);
+        yamlMaxUnsaved = config.getInt("yaml.maxunsaved", 500);
+        offlineLookupSize = config.getInt("offlinelookup.size", 1000);
+        offlineLookupTTL = config.getInt("offlinelookup.ttl", 300);
+        offlineLookupNegativeTTL = config.getInt("offlinelookup.negativettl", 60);
 
         //fancy ingame
         notifyPromote = config.getBoolean("notify.promote", false);
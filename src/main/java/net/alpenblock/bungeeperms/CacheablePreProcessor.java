@@ -0,0 +1,12 @@
+package net.alpenblock.bungeeperms;
+
+/**
+ * A pre processor whose result only depends on the given permissions and the user of the sender.
+ * <p>
+ * The result is cached per user, server and world until the permissions of the user are recalculated, so it may
+ * only depend on data which triggers a recalculation when it changes. The sender is needed to find the user; for
+ * checks without sender the processor runs on each check.
+ */
+public interface CacheablePreProcessor extends PermissionsPreProcessor
+{
+}
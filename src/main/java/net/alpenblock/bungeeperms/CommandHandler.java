@@ -94,6 +94,10 @@ public class CommandHandler
             {
                 return handleUUID(sender, args);
             }
+            else if (args[0].equalsIgnoreCase("heap"))
+            {
+                return handleHeap(sender, args);
+            }
         }
         return false;
     }
@@ -2039,6 +2043,27 @@ public class CommandHandler
         return true;
     }
 
+    private boolean handleHeap(Sender sender, String[] args)
+    {
+        if (!checker.hasOrConsole(sender, "bungeeperms.heap", true))
+        {
+            return true;
+        }
+
+        if (!Statics.matchArgs(sender, args, 1))
+        {
+            return true;
+        }
+
+        Footprint f = Footprint.measure(pm().getUsers());
+        sender.sendMessage(Lang.translate(MessageType.HEAP_USERS, f.getUsers()));
+        sender.sendMessage(Lang.translate(MessageType.HEAP_DICTIONARY, f.getDictionaryNodes(), f.getDictionaryBytes()));
+        sender.sendMessage(Lang.translate(MessageType.HEAP_EFFECTIVE, f.getCachedLists(), f.getDistinctLists()));
+        sender.sendMessage(Lang.translate(MessageType.HEAP_PER_USER, f.getStringListBytesPerUser(), f.getEncodedBytesPerUser()));
+        sender.sendMessage(Lang.translate(MessageType.HEAP_CHECK_CACHE, f.getCheckCacheHits(), f.getCheckCacheMisses()));
+        return true;
+    }
+
     private boolean handleMigrate(Sender sender, String[] args)
     {
         if (!checker.hasOrConsole(sender, "bungeeperms.migrate", true))
@@ -0,0 +1,23 @@
+package net.alpenblock.bungeeperms;
+
+/**
+ * An immutable, precompiled permission list which can be checked without re-parsing the permission entries.
+ */
+public interface CompiledPermissions
+{
+
+    /**
+     * Checks the given permission. The last matching entry of the compiled list wins.
+     *
+     * @param perm the permission to check
+     * @return true if granted, false if denied, null if no entry matches
+     */
+    public Boolean has(String perm);
+
+    /**
+     * Gets the number of permission entries this was compiled from.
+     *
+     * @return the number of entries
+     */
+    public int size();
+}
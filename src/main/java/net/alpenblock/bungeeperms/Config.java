@@ -1,8 +1,16 @@
 package net.alpenblock.bungeeperms;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import net.alpenblock.bungeeperms.config.FileConfiguration;
 import net.alpenblock.bungeeperms.config.YamlConfiguration;
 import net.alpenblock.bungeeperms.platform.PlatformPlugin;
@@ -10,10 +18,24 @@ import net.alpenblock.bungeeperms.platform.PlatformPlugin;
 public class Config
 {
 
+    //shared by all write behind configs; the thread stops when idle
+    private static ScheduledThreadPoolExecutor flusher;
+
     private boolean allowsave;
     private FileConfiguration fconfig;
     private String path;
 
+    //write behind
+    private long flushInterval;
+    private int maxUnsaved;
+    private int unsaved;
+    private boolean flushScheduled;
+    private long serialized;
+    private final Object writelock = new Object();
+    private long written;
+    //set once the config is replaced; nothing is written anymore
+    private volatile boolean discarded;
+
     public Config(PlatformPlugin p, String path)
     {
         this(p.getPluginFolder() + path);
@@ -27,8 +49,14 @@ public class Config
         allowsave = false;
     }
 
-    public void load()
+    public synchronized void load()
     {
+        //do not lose unsaved changes
+        if (unsaved > 0)
+        {
+            flush();
+        }
+
         createFile();
         try
         {
@@ -42,24 +70,182 @@ public class Config
         }
     }
 
+    /**
+     * Enables or disables write behind. With write behind saves only mark the config as changed. The changes are
+     * written by a background thread at most once per interval or at once if too many changes are unsaved.
+     *
+     * @param interval the time between writes in milliseconds; 0 or less to disable write behind
+     * @param maxunsaved the maximum number of unsaved changes
+     */
+    public void setWriteBehind(long interval, int maxunsaved)
+    {
+        synchronized (this)
+        {
+            flushInterval = interval;
+            maxUnsaved = maxunsaved;
+        }
+        if (interval <= 0)
+        {
+            flush();
+        }
+    }
+
     public void save()
     {
-        createFile();
-        try
+        boolean now;
+        synchronized (this)
+        {
+            unsaved++;
+            now = flushInterval <= 0 || unsaved >= maxUnsaved;
+            if (!now && !flushScheduled)
+            {
+                flushScheduled = true;
+                scheduleFlush(flushInterval);
+            }
+        }
+        if (now)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all unsaved changes to the file.
+     */
+    public void flush()
+    {
+        String data;
+        long version;
+        synchronized (this)
         {
-            if (allowsave)
+            if (unsaved == 0 || discarded)
             {
-                fconfig.save(path);
+                return;
             }
-            else
+            if (!allowsave)
             {
-                throw new IllegalStateException("config failed to load; save not allowed");
+                unsaved = 0;
+                new IllegalStateException("config failed to load; save not allowed").printStackTrace();
+                return;
             }
+            data = fconfig.saveToString();
+            unsaved = 0;
+            version = ++serialized;
         }
-        catch (Exception e)
+
+        boolean failed = false;
+        synchronized (writelock)
         {
-            e.printStackTrace();
+            //a newer state is already written or the config was discarded meanwhile
+            if (version < written || discarded)
+            {
+                return;
+            }
+            try
+            {
+                write(data);
+                written = version;
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                failed = true;
+            }
+        }
+
+        if (failed)
+        {
+            //try again later
+            synchronized (this)
+            {
+                unsaved++;
+                if (flushInterval > 0 && !flushScheduled)
+                {
+                    flushScheduled = true;
+                    scheduleFlush(flushInterval);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the unsaved changes and stops all writes of this config, including a scheduled flush. Has to be called
+     * before the config is replaced by a new one of the same file, so an old state cannot overwrite the new one.
+     * Returns after a write which is running has finished.
+     */
+    public void discard()
+    {
+        synchronized (this)
+        {
+            discarded = true;
+            unsaved = 0;
+        }
+        synchronized (writelock)
+        {
+            //waits for a running write
+        }
+    }
+
+    public synchronized boolean hasUnsavedChanges()
+    {
+        return unsaved > 0;
+    }
+
+    //writes to a temp file which replaces the file so the file is never half written
+    private void write(String data) throws IOException
+    {
+        createFile();
+        File file = new File(path);
+        File tmp = new File(path + ".tmp");
+        try (FileWriter writer = new FileWriter(tmp))
+        {
+            writer.write(data);
+        }
+        try
+        {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void scheduleFlush(long delay)
+    {
+        Runnable r = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (Config.this)
+                {
+                    flushScheduled = false;
+                }
+                flush();
+            }
+        };
+        getFlusher().schedule(r, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getFlusher()
+    {
+        if (flusher == null)
+        {
+            flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "BungeePerms Config Writer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            flusher.setKeepAliveTime(10, TimeUnit.SECONDS);
+            flusher.allowCoreThreadTimeOut(true);
         }
+        return flusher;
     }
 
     private void createFile()
@@ -79,7 +265,7 @@ public class Config
         }
     }
 
-    public String getString(String key, String def)
+    public synchronized String getString(String key, String def)
     {
         if (fconfig.contains(key))
         {
@@ -93,7 +279,7 @@ public class Config
         }
     }
 
-    public int getInt(String key, int def)
+    public synchronized int getInt(String key, int def)
     {
         if (fconfig.contains(key))
         {
@@ -107,7 +293,7 @@ public class Config
         }
     }
 
-    public long getLong(String key, long def)
+    public synchronized long getLong(String key, long def)
     {
         if (fconfig.contains(key))
         {
@@ -121,7 +307,7 @@ public class Config
         }
     }
 
-    public boolean getBoolean(String key, boolean def)
+    public synchronized boolean getBoolean(String key, boolean def)
     {
         if (fconfig.contains(key))
         {
@@ -135,7 +321,7 @@ public class Config
         }
     }
 
-    public <T extends Enum> T getEnumValue(String key, T def)
+    public synchronized <T extends Enum> T getEnumValue(String key, T def)
     {
         if (fconfig.contains(key))
         {
@@ -159,7 +345,7 @@ public class Config
         }
     }
 
-    public List<String> getListString(String key, List<String> def)
+    public synchronized List<String> getListString(String key, List<String> def)
     {
         if (fconfig.contains(key))
         {
@@ -173,7 +359,7 @@ public class Config
         }
     }
 
-    public double getDouble(String key, double def)
+    public synchronized double getDouble(String key, double def)
     {
         if (fconfig.contains(key))
         {
@@ -187,73 +373,73 @@ public class Config
         }
     }
 
-    public void setString(String key, String val)
+    public synchronized void setString(String key, String val)
     {
         fconfig.set(key, val);
     }
 
-    public void setStringAndSave(String key, String val)
+    public synchronized void setStringAndSave(String key, String val)
     {
         fconfig.set(key, val);
         save();
     }
 
-    public void setInt(String key, int val)
+    public synchronized void setInt(String key, int val)
     {
         fconfig.set(key, val);
     }
 
-    public void setIntAndSave(String key, int val)
+    public synchronized void setIntAndSave(String key, int val)
     {
         fconfig.set(key, val);
         save();
     }
     
-    public void setLong(String key, long val)
+    public synchronized void setLong(String key, long val)
     {
         fconfig.set(key, val);
     }
 
-    public void setLongAndSave(String key, long val)
+    public synchronized void setLongAndSave(String key, long val)
     {
         fconfig.set(key, val);
         save();
     }
 
-    public void setBool(String key, boolean val)
+    public synchronized void setBool(String key, boolean val)
     {
         fconfig.set(key, val);
     }
 
-    public void setBoolAndSave(String key, boolean val)
+    public synchronized void setBoolAndSave(String key, boolean val)
     {
         fconfig.set(key, val);
         save();
     }
 
-    public <T extends Enum> void setEnumValue(String key, T val)
+    public synchronized <T extends Enum> void setEnumValue(String key, T val)
     {
         fconfig.set(key, val.name());
     }
 
-    public <T extends Enum> void setEnumAndSave(String key, T val)
+    public synchronized <T extends Enum> void setEnumAndSave(String key, T val)
     {
         fconfig.set(key, val.name());
         save();
     }
 
-    public void setListString(String key, List<String> val)
+    public synchronized void setListString(String key, List<String> val)
     {
         fconfig.set(key, val);
     }
 
-    public void setListStringAndSave(String key, List<String> val)
+    public synchronized void setListStringAndSave(String key, List<String> val)
     {
         fconfig.set(key, val);
         save();
     }
 
-    public List<String> getSubNodes(String node)
+    public synchronized List<String> getSubNodes(String node)
     {
         List<String> ret = new ArrayList<>();
         try
@@ -269,13 +455,13 @@ public class Config
         return ret;
     }
 
-    public void deleteNode(String node)
+    public synchronized void deleteNode(String node)
     {
         fconfig.set(node, null);
         save();
     }
 
-    public boolean keyExists(String node)
+    public synchronized boolean keyExists(String node)
     {
         return fconfig.contains(node);
     }
@@ -0,0 +1,121 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+
+/**
+ * Canonical key of a server and world context.
+ * <p>
+ * There is exactly one instance per (server, world) pair, so contexts are compared by identity and are cheap map
+ * keys. Server and world are lower case. Names are looked up as given first, so lower case names are found without
+ * building a string; other spellings are lower cased on each lookup and not stored.
+ * <p>
+ * Contexts are never dropped, as an identity key must stay valid while it is used. Each server and each world name
+ * which is ever looked up keeps a context of a few dozen bytes, so servers which create worlds with generated names,
+ * e.g. one per match, grow by one context per such world until the restart.
+ */
+public final class Context
+{
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    /**
+     * The context without server and world.
+     */
+    public static final Context GLOBAL = new Context(null, null, null);
+
+    @Getter
+    private final int id;
+    @Getter
+    private final String server;
+    @Getter
+    private final String world;
+
+    //the server context of a world context
+    private final Context parent;
+    //lower case name -> server or world context below this one
+    private final ConcurrentHashMap<String, Context> children;
+
+    private Context(String server, String world, Context parent)
+    {
+        this.id = ids.getAndIncrement();
+        this.server = server;
+        this.world = world;
+        this.parent = parent;
+        this.children = world == null ? new ConcurrentHashMap<String, Context>() : null;
+    }
+
+    /**
+     * Gets the context of a server.
+     *
+     * @param server the server in any case or null
+     * @return the context; global if server is null
+     */
+    public static Context of(String server)
+    {
+        return server == null ? GLOBAL : GLOBAL.child(server);
+    }
+
+    /**
+     * Gets the context of a world on a server.
+     *
+     * @param server the server in any case or null
+     * @param world the world in any case or null
+     * @return the context; the server context if world is null and global if server is null
+     */
+    public static Context of(String server, String world)
+    {
+        Context c = of(server);
+        return world == null || c == GLOBAL ? c : c.child(world);
+    }
+
+    /**
+     * Checks if this context is the given context or a world of it.
+     *
+     * @param c the context to check against
+     * @return true if this context is c or a world of c
+     */
+    public boolean isIn(Context c)
+    {
+        return this == c || parent == c;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return id;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (server == null)
+        {
+            return "global";
+        }
+        return world == null ? server : server + ";" + world;
+    }
+
+    private Context child(String name)
+    {
+        Context c = children.get(name);
+        if (c != null)
+        {
+            return c;
+        }
+
+        String lower = Statics.toLower(name);
+        c = children.get(lower);
+        if (c == null)
+        {
+            c = this == GLOBAL ? new Context(lower, null, null) : new Context(server, lower, this);
+            Context old = children.putIfAbsent(lower, c);
+            if (old != null)
+            {
+                c = old;
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,136 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Estimate of the heap used by the permissions of the cached users.
+ * <p>
+ * Sizes are those of a 64 bit jvm with compressed references: 12 byte object headers, 4 byte references and 8 byte
+ * alignment. The string list layout is what the same permissions took before they were encoded: an ArrayList per
+ * list, a string of its own for each stored node and a copy of each cached effective list.
+ * <p>
+ * The hits and misses of the permission check result caches are summed up along the way.
+ */
+@Getter
+public class Footprint
+{
+
+    static final int REF = 4;
+
+    private int users;
+    private int cachedLists;
+    private int distinctLists;
+    private int dictionaryNodes;
+    private long dictionaryBytes;
+    //own and effective perms of all users
+    private long stringListBytes;
+    private long encodedBytes;
+    //permission check result caches of all users
+    private long checkCacheHits;
+    private long checkCacheMisses;
+
+    /**
+     * Measures the permissions of the given users.
+     *
+     * @param users the users
+     * @return the estimate
+     */
+    public static Footprint measure(Collection<User> users)
+    {
+        Footprint f = new Footprint();
+        Map<List<String>, Boolean> seen = new IdentityHashMap<>();
+        for (User u : users)
+        {
+            try
+            {
+                f.addOwn(u.getPerms());
+                for (Server s : u.getServers().values())
+                {
+                    f.addOwn(s.getPerms());
+                    for (World w : s.getWorlds().values())
+                    {
+                        f.addOwn(w.getPerms());
+                    }
+                }
+
+                for (List<String> l : u.getCachedEffectivePermLists())
+                {
+                    f.cachedLists++;
+                    f.stringListBytes += arrayList(l.size()) + align(12 + REF);
+                    if (seen.put(l, Boolean.TRUE) == null)
+                    {
+                        f.distinctLists++;
+                        f.encodedBytes += estimate(l);
+                    }
+                }
+            }
+            catch (ConcurrentModificationException e)
+            {
+                //changed while measured; an estimate anyway
+            }
+            f.checkCacheHits += u.getPermCheckCacheHits();
+            f.checkCacheMisses += u.getPermCheckCacheMisses();
+            f.users++;
+        }
+
+        f.dictionaryNodes = PermissionDictionary.size();
+        f.dictionaryBytes = PermissionDictionary.estimateBytes();
+        return f;
+    }
+
+    public long getStringListBytesPerUser()
+    {
+        return users == 0 ? 0 : stringListBytes / users;
+    }
+
+    /**
+     * Gets the bytes per user of the encoded permissions including the dictionary.
+     *
+     * @return the bytes per user
+     */
+    public long getEncodedBytesPerUser()
+    {
+        return users == 0 ? 0 : (encodedBytes + dictionaryBytes) / users;
+    }
+
+    private void addOwn(List<String> perms)
+    {
+        stringListBytes += arrayList(perms.size());
+        for (String perm : perms)
+        {
+            stringListBytes += string(perm);
+        }
+        encodedBytes += estimate(perms);
+    }
+
+    private static long estimate(List<String> perms)
+    {
+        return perms instanceof PermissionList ? ((PermissionList) perms).estimateBytes() : arrayList(perms.size());
+    }
+
+    static long align(long bytes)
+    {
+        return (bytes + 7) & ~7L;
+    }
+
+    static long array(int length, int elementsize)
+    {
+        return align(16 + (long) length * elementsize);
+    }
+
+    static long string(String s)
+    {
+        //string object with hash plus its char array
+        return align(12 + REF + 4) + array(s.length(), 2);
+    }
+
+    private static long arrayList(int size)
+    {
+        return align(12 + 4 + REF + 4) + array(size, REF);
+    }
+}
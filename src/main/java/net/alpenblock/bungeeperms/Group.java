@@ -2,8 +2,10 @@ package net.alpenblock.bungeeperms;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -19,7 +21,10 @@ public class Group implements Comparable<Group>, PermEntity
 
     @Getter(value = AccessLevel.PRIVATE)
     @Setter(value = AccessLevel.PRIVATE)
-    private Map<String, List<String>> cachedPerms;
+    //filled lazily by the permission checks, so it is shared between threads
+    private ConcurrentHashMap<Context, List<String>> cachedPerms;
+    //bumped by every recalculation; a result calculated meanwhile is not cached
+    private transient volatile int generation;
 
     private String name;
     private List<String> inheritances;
@@ -37,7 +42,7 @@ public class Group implements Comparable<Group>, PermEntity
     {
         this.name = name;
         this.inheritances = inheritances;
-        this.perms = perms;
+        this.perms = new PermissionList(perms);
         this.servers = servers;
         this.rank = rank;
         this.weight = weight;
@@ -47,7 +52,7 @@ public class Group implements Comparable<Group>, PermEntity
         this.prefix = prefix;
         this.suffix = suffix;
 
-        cachedPerms = new HashMap<>();
+        cachedPerms = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -68,6 +73,12 @@ public class Group implements Comparable<Group>, PermEntity
         return s;
     }
 
+    @Override
+    public void setPerms(List<String> perms)
+    {
+        this.perms = new PermissionList(perms);
+    }
+
     public boolean isDefault()
     {
         return isdefault;
@@ -80,55 +91,55 @@ public class Group implements Comparable<Group>, PermEntity
 
     public List<String> getEffectivePerms()
     {
-        List<String> effperms = cachedPerms.get("global");
-        if (effperms == null)
-        {
-            effperms = calcEffectivePerms();
-            cachedPerms.put("global", effperms);
-        }
-
-        return new ArrayList<>(effperms);
+        return getEffectivePerms(Context.GLOBAL);
     }
 
     public List<String> getEffectivePerms(String server)
     {
-        server = Statics.toLower(server);
-
-        List<String> effperms = cachedPerms.get(server);
-        if (effperms == null)
-        {
-            effperms = calcEffectivePerms(server);
-            cachedPerms.put(server, effperms);
-        }
-
-        return new ArrayList<>(effperms);
+        return getEffectivePerms(Context.of(server));
     }
 
     public List<String> getEffectivePerms(String server, String world)
     {
-        server = Statics.toLower(server);
-        world = Statics.toLower(world);
+        return getEffectivePerms(Context.of(server, world));
+    }
 
-        List<String> effperms = cachedPerms.get(server + ";" + world);
+    private List<String> getEffectivePerms(Context ctx)
+    {
+        List<String> effperms = cachedPerms.get(ctx);
         if (effperms == null)
         {
-            effperms = calcEffectivePerms(server, world);
-            cachedPerms.put(server + ";" + world, effperms);
+            int gen = generation;
+            if (ctx.getServer() == null)
+            {
+                effperms = calcEffectivePerms();
+            }
+            else if (ctx.getWorld() == null)
+            {
+                effperms = calcEffectivePerms(ctx.getServer());
+            }
+            else
+            {
+                effperms = calcEffectivePerms(ctx.getServer(), ctx.getWorld());
+            }
+            //immutable, so it is handed out without a copy
+            effperms = PermissionList.shared(effperms);
+            if (gen == generation)
+            {
+                cachedPerms.put(ctx, effperms);
+            }
         }
 
-        return new ArrayList<>(effperms);
+        return effperms;
     }
 
     public List<String> calcEffectivePerms()
     {
         List<String> ret = new ArrayList<>();
-        for (Group g : BungeePerms.getInstance().getPermissionsManager().getGroups())
+        for (Group g : BungeePerms.getInstance().getPermissionsManager().getInheritedGroups(this))
         {
-            if (inheritances.contains(g.getName()))
-            {
-                List<String> gperms = g.getEffectivePerms();
-                ret.addAll(gperms);
-            }
+            List<String> gperms = g.getEffectivePerms();
+            ret.addAll(gperms);
         }
         ret.addAll(perms);
 
@@ -142,13 +153,10 @@ public class Group implements Comparable<Group>, PermEntity
         server = Statics.toLower(server);
 
         List<String> ret = new ArrayList<>();
-        for (Group g : BungeePerms.getInstance().getPermissionsManager().getGroups())
+        for (Group g : BungeePerms.getInstance().getPermissionsManager().getInheritedGroups(this))
         {
-            if (inheritances.contains(g.getName()))
-            {
-                List<String> gperms = g.getEffectivePerms(server);
-                ret.addAll(gperms);
-            }
+            List<String> gperms = g.getEffectivePerms(server);
+            ret.addAll(gperms);
         }
 
         ret.addAll(perms);
@@ -172,13 +180,10 @@ public class Group implements Comparable<Group>, PermEntity
         world = Statics.toLower(world);
 
         List<String> ret = new ArrayList<>();
-        for (Group g : BungeePerms.getInstance().getPermissionsManager().getGroups())
+        for (Group g : BungeePerms.getInstance().getPermissionsManager().getInheritedGroups(this))
         {
-            if (inheritances.contains(g.getName()))
-            {
-                List<String> gperms = g.getEffectivePerms(server, world);
-                ret.addAll(gperms);
-            }
+            List<String> gperms = g.getEffectivePerms(server, world);
+            ret.addAll(gperms);
         }
 
         ret.addAll(perms);
@@ -260,65 +265,32 @@ public class Group implements Comparable<Group>, PermEntity
         BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(this);
     }
 
+    //the effective perms are only dropped here and recalculated lazily on the next access
     public void recalcPerms0()
     {
-        for (Map.Entry<String, List<String>> e : cachedPerms.entrySet())
-        {
-            String where = e.getKey();
-            List<String> l = Statics.toList(where, ";");
-            String server = Statics.toLower(l.get(0));
-
-            if (l.size() == 1)
-            {
-                if (server.equalsIgnoreCase("global"))
-                {
-                    cachedPerms.put("global", calcEffectivePerms());
-                }
-                else
-                {
-                    List<String> effperms = calcEffectivePerms(server);
-                    cachedPerms.put(server, effperms);
-                }
-            }
-            else if (l.size() == 2)
-            {
-                String world = Statics.toLower(l.get(1));
-                recalcPerms0(server, world);
-            }
-        }
+        generation++;
+        cachedPerms.clear();
     }
 
     public void recalcPerms0(String server)
     {
-        for (Map.Entry<String, List<String>> e : cachedPerms.entrySet())
-        {
-            String where = e.getKey();
-            List<String> l = Statics.toList(where, ";");
-            String lserver = Statics.toLower(l.get(0));
+        Context ctx = Context.of(server);
 
-            if (lserver.equalsIgnoreCase(server))
+        generation++;
+        Iterator<Context> it = cachedPerms.keySet().iterator();
+        while (it.hasNext())
+        {
+            if (it.next().isIn(ctx))
             {
-                if (l.size() == 1)
-                {
-                    List<String> effperms = calcEffectivePerms(lserver);
-                    cachedPerms.put(lserver, effperms);
-                }
-                else if (l.size() == 2)
-                {
-                    String world = Statics.toLower(l.get(1));
-                    recalcPerms0(lserver, world);
-                }
+                it.remove();
             }
         }
     }
 
     public void recalcPerms0(String server, String world)
     {
-        server = Statics.toLower(server);
-        world = Statics.toLower(world);
-
-        List<String> effperms = calcEffectivePerms(server, world);
-        cachedPerms.put(server + ";" + world, effperms);
+        generation++;
+        cachedPerms.remove(Context.of(server, world));
     }
 
     public List<BPPermission> getPermsWithOrigin(String server, String world)
@@ -326,15 +298,12 @@ public class Group implements Comparable<Group>, PermEntity
         List<BPPermission> ret = new ArrayList<>();
 
         //add inherited groups' perms
-        for (Group g : BungeePerms.getInstance().getPermissionsManager().getGroups())
+        for (Group g : BungeePerms.getInstance().getPermissionsManager().getInheritedGroups(this))
         {
-            if (inheritances.contains(g.getName()))
+            List<BPPermission> inheritgroupperms = g.getPermsWithOrigin(server, world);
+            for (BPPermission perm : inheritgroupperms)
             {
-                List<BPPermission> inheritgroupperms = g.getPermsWithOrigin(server, world);
-                for (BPPermission perm : inheritgroupperms)
-                {
-                    ret.add(perm);
-                }
+                ret.add(perm);
             }
         }
 
@@ -406,13 +375,8 @@ public class Group implements Comparable<Group>, PermEntity
     {
         int count = getOwnPermissionsCount(server, world);
 
-        for (String group : inheritances)
+        for (Group g : BungeePerms.getInstance().getPermissionsManager().getInheritedGroups(this))
         {
-            Group g = BungeePerms.getInstance().getPermissionsManager().getGroup(group);
-            if (g == null)
-            {
-                continue;
-            }
             count += g.getPermissionsCount(server, world);
         }
 
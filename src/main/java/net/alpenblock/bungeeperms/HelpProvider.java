@@ -63,6 +63,7 @@ public class HelpProvider
         HELP_ENTRIES.add(new HelpEntry("bungeeperms.migrate",/*                  */ makeSuggestCommand("/bp migrate <useuuid> [true|false]", Lang.translate(MessageType.HELP_MIGRATE_USEUUID))));
         HELP_ENTRIES.add(new HelpEntry("bungeeperms.migrate",/*                  */ makeSuggestCommand("/bp migrate <uuidplayerdb> [None|YAML|MySQL]",Lang.translate(MessageType.HELP_MIGRATE_UUIDPLAYERDB))));
         HELP_ENTRIES.add(new HelpEntry("bungeeperms.uuid",/*                     */ makeSuggestCommand("/bp uuid <player|uuid> [-rm]", Lang.translate(MessageType.HELP_UUID))));
+        HELP_ENTRIES.add(new HelpEntry("bungeeperms.heap",/*                     */ makeClickCommand("/bp heap", Lang.translate(MessageType.HELP_HEAP))));
 // template        helpentries.add(new HelpEntry(null, makeClickCommand("/bp help", "Shows").color(ChatColor.GRAY)));
     }
 
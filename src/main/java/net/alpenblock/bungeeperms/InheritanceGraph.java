@@ -0,0 +1,242 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inheritance relations between the loaded groups.
+ * <p>
+ * The inheritances of each group are resolved once into direct group references. They keep the order of the group
+ * list, which is the order the inherited permissions are merged in. Inheritances which would close a loop are
+ * dropped and reported in {@link #getLoops()}, so the remaining graph can be walked without endless recursion.
+ * <p>
+ * Besides the inheritances of each group the graph knows which groups inherit a group. A change of a group only
+ * affects the group itself and the groups (transitively) inheriting it, so only those have to be recalculated.
+ * <p>
+ * The graph is a snapshot of the groups it was built from and has to be rebuilt if groups or inheritances change.
+ */
+public class InheritanceGraph
+{
+
+    //lower case group name -> groups directly inheriting it
+    private final Map<String, List<Group>> inheritors = new HashMap<>();
+    //group -> directly inherited groups
+    private final Map<Group, List<Group>> inheritances = new IdentityHashMap<>();
+    //inherited groups come before the groups inheriting them
+    private final List<Group> order = new ArrayList<>();
+    private final List<String[]> loops = new ArrayList<>();
+
+    public InheritanceGraph(List<Group> groups)
+    {
+        Map<String, Group> byname = new HashMap<>();
+        final Map<Group, Integer> positions = new IdentityHashMap<>();
+        for (Group g : groups)
+        {
+            byname.put(Statics.toLower(g.getName()), g);
+            positions.put(g, positions.size());
+        }
+        Comparator<Group> listorder = new Comparator<Group>()
+        {
+            @Override
+            public int compare(Group g1, Group g2)
+            {
+                return Integer.compare(positions.get(g1), positions.get(g2));
+            }
+        };
+
+        for (Group g : groups)
+        {
+            List<Group> inherited = new ArrayList<>();
+            for (String inheritance : g.getInheritances())
+            {
+                //reverse relation
+                String key = Statics.toLower(inheritance);
+                List<Group> l = inheritors.get(key);
+                if (l == null)
+                {
+                    l = new ArrayList<>();
+                    inheritors.put(key, l);
+                }
+                l.add(g);
+
+                Group ig = byname.get(key);
+                if (ig != null && !containsSame(inherited, ig))
+                {
+                    inherited.add(ig);
+                }
+            }
+            Collections.sort(inherited, listorder);
+            inheritances.put(g, inherited);
+        }
+
+        sort(groups);
+    }
+
+    /**
+     * Gets the groups the given group inherits directly.
+     *
+     * @param group the group
+     * @return an unmodifiable list of the inherited groups or null if the group is not part of this graph
+     */
+    public List<Group> getInheritances(Group group)
+    {
+        List<Group> l = inheritances.get(group);
+        return l == null ? null : Collections.unmodifiableList(l);
+    }
+
+    /**
+     * Gets all groups in topological order. Each group comes after all groups it inherits.
+     *
+     * @return an unmodifiable list of all groups
+     */
+    public List<Group> getOrder()
+    {
+        return Collections.unmodifiableList(order);
+    }
+
+    /**
+     * Gets the detected inheritance loops. Each entry contains the loop path, the inheriting group and the inherited
+     * group of the dropped inheritance.
+     *
+     * @return an unmodifiable list of the detected loops
+     */
+    public List<String[]> getLoops()
+    {
+        return Collections.unmodifiableList(loops);
+    }
+
+    /**
+     * Gets the given group and all groups which inherit it directly or indirectly.
+     *
+     * @param group the changed group
+     * @return an identity based set of the affected groups
+     */
+    public Set<Group> getDependents(Group group)
+    {
+        Set<Group> ret = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+
+        Deque<Group> todo = new ArrayDeque<>();
+        todo.add(group);
+        while (!todo.isEmpty())
+        {
+            Group g = todo.poll();
+
+            //visited check also stops inheritance loops
+            if (!ret.add(g))
+            {
+                continue;
+            }
+
+            List<Group> l = inheritors.get(Statics.toLower(g.getName()));
+            if (l != null)
+            {
+                todo.addAll(l);
+            }
+        }
+
+        return ret;
+    }
+
+    //iterative depth first search; the post order is the topological order
+    private void sort(List<Group> groups)
+    {
+        Set<Group> done = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+        Set<Group> onpath = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+        Deque<Frame> path = new ArrayDeque<>();
+
+        for (Group root : groups)
+        {
+            if (done.contains(root))
+            {
+                continue;
+            }
+
+            path.push(new Frame(root));
+            onpath.add(root);
+            while (!path.isEmpty())
+            {
+                Frame f = path.peek();
+                List<Group> inherited = inheritances.get(f.group);
+                if (f.next >= inherited.size())
+                {
+                    path.pop();
+                    onpath.remove(f.group);
+                    done.add(f.group);
+                    order.add(f.group);
+                    continue;
+                }
+
+                Group ig = inherited.get(f.next);
+                if (onpath.contains(ig))
+                {
+                    //loop; drop this inheritance
+                    loops.add(new String[]
+                    {
+                        describeLoop(path, ig), f.group.getName(), ig.getName()
+                    });
+                    inherited.remove(f.next);
+                }
+                else if (done.contains(ig))
+                {
+                    f.next++;
+                }
+                else
+                {
+                    f.next++;
+                    path.push(new Frame(ig));
+                    onpath.add(ig);
+                }
+            }
+        }
+    }
+
+    private static String describeLoop(Deque<Frame> path, Group start)
+    {
+        String ret = "";
+        boolean inloop = false;
+        Iterator<Frame> it = path.descendingIterator();
+        while (it.hasNext())
+        {
+            Group g = it.next().group;
+            inloop |= g == start;
+            if (inloop)
+            {
+                ret += g.getName() + " -> ";
+            }
+        }
+        return ret + start.getName();
+    }
+
+    private static boolean containsSame(List<Group> l, Group g)
+    {
+        for (Group lg : l)
+        {
+            if (lg == g)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Frame
+    {
+
+        private final Group group;
+        private int next;
+
+        private Frame(Group group)
+        {
+            this.group = group;
+        }
+    }
+}
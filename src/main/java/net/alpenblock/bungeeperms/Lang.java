@@ -52,6 +52,11 @@ public class Lang
         FORMATTING_DONE("formatting-done", Color.Message.alt() + "Finished formatting."),
         CLEANING("cleaning", Color.Text.alt() + "Cleaning up permissions file/table ..."),
         CLEANING_DONE("cleaning-done", Color.Message.alt() + "Finished cleaning. Deleted " + Color.Value.alt() + "{0} users" + Color.Message.alt() + "."),
+        HEAP_USERS("heap.users", Color.Text.alt() + "Permission heap of " + Color.Value.alt() + "{0}" + Color.Text.alt() + " cached users:"),
+        HEAP_DICTIONARY("heap.dictionary", Color.Text.alt() + "Dictionary: " + Color.Value.alt() + "{0}" + Color.Text.alt() + " nodes, " + Color.Value.alt() + "{1}" + Color.Text.alt() + " bytes"),
+        HEAP_EFFECTIVE("heap.effective", Color.Text.alt() + "Effective lists: " + Color.Value.alt() + "{0}" + Color.Text.alt() + " cached, " + Color.Value.alt() + "{1}" + Color.Text.alt() + " distinct"),
+        HEAP_PER_USER("heap.per-user", Color.Text.alt() + "Per user: " + Color.Value.alt() + "{0}" + Color.Text.alt() + " bytes as string lists, " + Color.Value.alt() + "{1}" + Color.Text.alt() + " bytes encoded"),
+        HEAP_CHECK_CACHE("heap.check-cache", Color.Text.alt() + "Check cache: " + Color.Value.alt() + "{0}" + Color.Text.alt() + " hits, " + Color.Value.alt() + "{1}" + Color.Text.alt() + " misses"),
         NO_PERM("no-permission", ChatColor.RED.alt() + "You don't have permission to do that!"),
         //error msgs
         ERR_INVALID_BOOL_VALUE("error.invalid-bool-value", Color.Error.alt() + "A boolean value is required!"),
@@ -168,10 +173,13 @@ public class Lang
         NO_PERM_FILE("log.permissions.no-perm-file", "no permissions file found!!!"),
         LOGIN("log.login", "Login by {0}"),
         LOGIN_UUID("log.login-uuid", "Login by {0} ({1})"),
+        LOGIN_LOAD_FAILED("log.login-load-failed", "Could not load the permissions of {0}; using the default groups until the next login"),
+        SCHEMA_UPGRADED("log.schema-upgraded", "Upgraded table {0} from schema version {1} to {2} in {3}ms. Sample query: {4}ms before, {5}ms after."),
         ADDING_DEFAULT_GROUPS("log.permissions.adding-default-groups", "Adding default groups to {0}"),
         ADDING_DEFAULT_GROUPS_UUID("log.permissions.adding-default-groups-uuid", "Adding default groups to {0} ({1})"),
         //warnings
         INTRUSION_DETECTED("warning.intrusion-detected", Color.Error.alt() + "Possible intrusion detected. Sender is {0}"),
+        INHERITANCE_LOOP("warning.inheritance-loop", "Inheritance loop detected: {0}. Ignoring the inheritance of {2} in group {1}."),
         MISCONFIG_BUNGEE_STANDALONE("warning.misconfig.bungee.standalone", "Server {0}: Received a plugin message from Bukkit/Spigot but BungeePerms is in standalone mode. Ignoring it ..."),
         MISCONFIG_BUNGEE_SERVERDEPENDEND("warning.misconfig.bungee.serverdependend", "Server {0}: Received a plugin message from Bukkit/Spigot but BungeePerms is in serverdependend mode. Ignoring it ..."),
         MISCONFIG_BUNGEE_SERVERDEPENDENDBLACKLIST("warning.misconfig.bungee.serverdependend-blacklist", "Server {0}: Received a plugin message from Bukkit/Spigot but BungeePerms is in serverdependend-blacklist mode. Ignoring it ..."),
@@ -230,7 +238,8 @@ public class Lang
         HELP_MIGRATE_BACKEND("help.migrate.backend", "Migrates the backend or shows status - " + ChatColor.RED.alt() + "!BE CAREFUL! (MAKE A BACKUP BEFORE EXECUTING)"),
         HELP_MIGRATE_USEUUID("help.migrate.use-uuid", "Migrates backends to (not) use UUIDs or shows status - " + ChatColor.RED.alt() + "!BE CAREFUL! (MAKE A BACKUP BEFORE EXECUTING)"),
         HELP_MIGRATE_UUIDPLAYERDB("help.migrate.uuid-player-db", "Migrates UUID-player-databases or shows status - " + ChatColor.RED.alt() + "!BE CAREFUL! (MAKE A BACKUP BEFORE EXECUTING)"),
-        HELP_UUID("help.uuid", "Gets the UUID of a player from database (-r: reverse; -m: ask mojang)");
+        HELP_UUID("help.uuid", "Gets the UUID of a player from database (-r: reverse; -m: ask mojang)"),
+        HELP_HEAP("help.heap", "Shows the estimated heap used by the permissions of the cached users");
 
         private final String configKey;
         private final String defaultValue;
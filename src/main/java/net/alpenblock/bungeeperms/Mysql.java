@@ -1,14 +1,29 @@
 package net.alpenblock.bungeeperms;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class Mysql
 {
 
+    //connections used within this time are not validated again on borrow
+    private static final long VALIDATION_INTERVAL = 1000;
+
     //todo
     public static void closeResultSet(AutoCloseable res)
     {
@@ -28,7 +43,22 @@ public class Mysql
     private final Config config;
     private final Debug debug;
     private final String configsection;
-    private Connection connection;
+
+    private String url;
+    private String user;
+    private String password;
+    private int poolSize;
+    private long idleTimeout;
+    private long borrowTimeout;
+    private int statementCacheSize;
+
+    //most recently used connections first
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private Semaphore permits;
+    private volatile boolean closed = true;
+
+    //transaction of the current thread
+    private final ThreadLocal<Transaction> transaction = new ThreadLocal<>();
 
     public Mysql(Config c, Debug d, String configsection)
     {
@@ -39,11 +69,24 @@ public class Mysql
 
     public void connect()
     {
+        //URL zusammenbasteln
+        url = "jdbc:mysql://" + config.getString(configsection + ".general.mysqlhost", "localhost") + ":" + config.getString(configsection + ".general.mysqlport", "3306") + "/" + config.getString(configsection + ".general.mysqldb", configsection) + "?autoReconnect=true&dontTrackOpenResources=true&rewriteBatchedStatements=true";
+        user = config.getString(configsection + ".general.mysqluser", configsection);
+        password = config.getString(configsection + ".general.mysqlpw", "password");
+
+        //pool
+        poolSize = Math.max(1, config.getInt(configsection + ".general.pool.size", 4));
+        idleTimeout = config.getInt(configsection + ".general.pool.idletimeout", 600) * 1000L;
+        borrowTimeout = config.getInt(configsection + ".general.pool.timeout", 10) * 1000L;
+        statementCacheSize = Math.max(1, config.getInt(configsection + ".general.pool.statementcache", 64));
+
+        permits = new Semaphore(poolSize, true);
+        closed = false;
+
+        //open the first connection to report errors early
         try
         {
-            //URL zusammenbasteln
-            String url = "jdbc:mysql://" + config.getString(configsection + ".general.mysqlhost", "localhost") + ":" + config.getString(configsection + ".general.mysqlport", "3306") + "/" + config.getString(configsection + ".general.mysqldb", configsection) + "?autoReconnect=true&dontTrackOpenResources=true";
-            this.connection = DriverManager.getConnection(url, config.getString(configsection + ".general.mysqluser", configsection), config.getString(configsection + ".general.mysqlpw", "password"));
+            release(open(), false);
         }
         catch (Exception e)
         {
@@ -53,63 +96,301 @@ public class Mysql
 
     public void close()
     {
-        if (this.connection != null)
+        closed = true;
+
+        //connections in use are closed on release
+        PooledConnection c;
+        while ((c = idle.pollFirst()) != null)
+        {
+            c.close();
+        }
+    }
+
+    public boolean isConnected()
+    {
+        try
         {
-            try
+            release(borrow(), false);
+            return true;
+        }
+        catch (Exception e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Runs a query and returns its result. The result holds a pooled connection and has to be closed.
+     *
+     * @param query the query; may contain ? placeholders
+     * @param params the values for the placeholders
+     * @return the result of the query
+     */
+    public ResultSet returnQuery(String query, Object... params)
+    {
+        PooledConnection c = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        try
+        {
+            c = borrow();
+            if (params.length == 0)
             {
-                if (isConnected())
-                {
-                    this.connection.close();
-                }
+                stmt = c.connection.createStatement();
+                rs = stmt.executeQuery(query);
             }
-            catch (Exception e)
+            else
             {
-                debug.log(e);
+                PreparedStatement ps = c.prepare(query, false);
+                bind(ps, params);
+                rs = ps.executeQuery();
             }
+            return releasing(rs, stmt, c);
+        }
+        catch (SQLException e)
+        {
+            closeResultSet(rs);
+            closeResultSet(stmt);
+            if (c != null)
+            {
+                release(c, true);
+            }
+            throw new RuntimeException(e);
         }
     }
 
-    public boolean isConnected()
+    /**
+     * Runs a query and streams its result row by row instead of reading it into memory at once. The result can only
+     * be read forward. It holds a pooled connection which can not run other queries until the result is closed.
+     *
+     * @param query the query; may contain ? placeholders
+     * @param params the values for the placeholders
+     * @return the result of the query
+     */
+    public ResultSet streamQuery(String query, Object... params)
     {
-        boolean connected = false;
-
+        PooledConnection c = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
         try
         {
-            rs = this.returnQuery("SELECT 1;", false);
-            if (rs == null)
+            c = borrow();
+            //not cached; streaming is a setting of the statement
+            ps = c.connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            bind(ps, params);
+            rs = ps.executeQuery();
+            return releasing(rs, ps, c);
+        }
+        catch (SQLException e)
+        {
+            closeResultSet(rs);
+            closeResultSet(ps);
+            if (c != null)
             {
-                connected = false;
+                release(c, true);
             }
-            else if (rs.next())
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs a statement.
+     *
+     * @param query the statement; may contain ? placeholders
+     * @param params the values for the placeholders
+     * @return true if the statement returned a result set
+     */
+    public boolean runQuery(String query, Object... params)
+    {
+        PooledConnection c = null;
+        boolean failed = true;
+        try
+        {
+            c = borrow();
+            boolean success;
+            if (params.length == 0)
+            {
+                try (Statement stmt = c.connection.createStatement())
+                {
+                    success = stmt.execute(query);
+                }
+            }
+            else
             {
-                connected = true;
+                PreparedStatement ps = c.prepare(query, false);
+                bind(ps, params);
+                success = ps.execute();
             }
+            failed = false;
+            return success;
         }
         catch (Exception e)
         {
-            connected = false;
+            throw new RuntimeException(e);
         }
         finally
         {
-            closeResultSet(rs);
+            if (c != null)
+            {
+                release(c, failed);
+            }
         }
-        return connected;
     }
 
-    public ResultSet returnQuery(String query)
+    /**
+     * Runs a statement once for each set of parameters. The statements are sent as one batch; inserts are rewritten
+     * into multi row inserts by the driver.
+     *
+     * @param query the statement; contains ? placeholders
+     * @param params the values for the placeholders of each execution
+     */
+    public void runBatch(String query, List<Object[]> params)
     {
-        return returnQuery(query, true);
+        if (params.isEmpty())
+        {
+            return;
+        }
+
+        PooledConnection c = null;
+        PreparedStatement ps = null;
+        boolean failed = true;
+        try
+        {
+            c = borrow();
+            ps = c.prepare(query, false);
+            for (Object[] p : params)
+            {
+                bind(ps, p);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            failed = false;
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            if (failed && ps != null)
+            {
+                try
+                {
+                    ps.clearBatch();
+                }
+                catch (SQLException e)
+                {
+                }
+            }
+            if (c != null)
+            {
+                release(c, failed);
+            }
+        }
     }
 
-    public boolean runQuery(String query)
+    /**
+     * Runs the given task in one transaction. All queries of the current thread use the same connection until the task
+     * returns. The transaction is committed if all queries succeed and rolled back otherwise. Transactions started
+     * within the task join the running transaction.
+     *
+     * @param task the task to run
+     */
+    public void runTransaction(Runnable task)
     {
-        return runQuery(query, true);
+        if (transaction.get() != null)
+        {
+            task.run();
+            return;
+        }
+
+        Transaction t;
+        try
+        {
+            t = new Transaction(borrow());
+        }
+        catch (SQLException e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        boolean committed = false;
+        try
+        {
+            t.connection.connection.setAutoCommit(false);
+            transaction.set(t);
+            task.run();
+            if (t.failed)
+            {
+                throw new SQLException("transaction rolled back because a statement failed");
+            }
+            t.connection.connection.commit();
+            committed = true;
+        }
+        catch (SQLException e)
+        {
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            transaction.remove();
+            end(t.connection, committed);
+        }
     }
 
-    public long runQueryGetId(String query)
+    /**
+     * Runs an insert statement and returns the generated id.
+     *
+     * @param query the statement; may contain ? placeholders
+     * @param params the values for the placeholders
+     * @return the last generated id or 0
+     */
+    public long runQueryGetId(String query, Object... params)
     {
-        return runQueryGetId(query, true);
+        long id = 0;
+
+        PooledConnection c = null;
+        boolean failed = true;
+        Statement stmt = null;
+        ResultSet rs = null;
+        try
+        {
+            c = borrow();
+            if (params.length == 0)
+            {
+                stmt = c.connection.createStatement();
+                stmt.executeUpdate(query, Statement.RETURN_GENERATED_KEYS);
+                rs = stmt.getGeneratedKeys();
+            }
+            else
+            {
+                PreparedStatement ps = c.prepare(query, true);
+                bind(ps, params);
+                ps.executeUpdate();
+                rs = ps.getGeneratedKeys();
+            }
+
+            if (rs.last())
+            {
+                id = rs.getLong(1);
+            }
+            failed = false;
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            closeResultSet(rs);
+            closeResultSet(stmt);
+            if (c != null)
+            {
+                release(c, failed);
+            }
+        }
+        return id;
     }
 
     public boolean tableExists(String table)
@@ -213,104 +494,165 @@ public class Mysql
         return fsuccess;
     }
 
-    private ResultSet returnQuery(String query, boolean checkconnection)
+    private PooledConnection open() throws SQLException
     {
-        Statement stmt = null;
-        ResultSet rs = null;
+        return new PooledConnection(DriverManager.getConnection(url, user, password), statementCacheSize);
+    }
+
+    private PooledConnection borrow() throws SQLException
+    {
+        Transaction t = transaction.get();
+        if (t != null)
+        {
+            return t.connection;
+        }
+        if (closed)
+        {
+            throw new SQLException("mysql connection pool is closed");
+        }
         try
         {
-            if (checkconnection)
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS))
             {
-                checkConnection();
+                throw new SQLException("no free mysql connection after " + borrowTimeout + "ms");
             }
-            stmt = this.connection.createStatement();
-            rs = stmt.executeQuery(query);
         }
-        catch (SQLException e)
+        catch (InterruptedException e)
         {
-            closeResultSet(rs);
-            closeResultSet(stmt);
-            throw new RuntimeException(e);
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
         }
-        finally
+
+        try
         {
-            try
-            {
-                //stmt.closeOnCompletion();
-            }
-            catch (Exception e)
+            evictIdle();
+
+            PooledConnection c;
+            while ((c = idle.pollFirst()) != null)
             {
+                if (c.validate())
+                {
+                    return c;
+                }
+                c.close();
             }
+            return open();
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            permits.release();
+            throw e;
         }
-        return rs;
     }
 
-    private boolean runQuery(String query, boolean checkconnection)
+    private void release(PooledConnection c, boolean failed)
     {
-        try
+        //the connection of a transaction is released when the transaction ends
+        Transaction t = transaction.get();
+        if (t != null && t.connection == c)
         {
-            if (checkconnection)
-            {
-                checkConnection();
-            }
-            boolean success;
-            try (Statement stmt = this.connection.createStatement())
-            {
-                success = stmt.execute(query);
-            }
-            return success;
+            t.failed |= failed;
+            return;
         }
-        catch (Exception e)
+
+        //a failed connection is validated on the next borrow
+        c.lastUsed = failed ? 0 : System.currentTimeMillis();
+        if (closed)
         {
-            throw new RuntimeException(e);
+            c.close();
+        }
+        else
+        {
+            idle.offerFirst(c);
         }
+        permits.release();
     }
 
-    private long runQueryGetId(String query, boolean checkconnection)
+    //rolls back if needed and returns the connection of a transaction to the pool
+    private void end(PooledConnection c, boolean committed)
     {
-        long id = 0;
-
-        Statement stmt = null;
-        ResultSet rs = null;
         try
         {
-            if (checkconnection)
-            {
-                checkConnection();
-            }
-            stmt = this.connection.createStatement();
-            stmt.executeUpdate(query, Statement.RETURN_GENERATED_KEYS);
-
-            rs = stmt.getGeneratedKeys();
-            if (rs.last())
+            if (!committed)
             {
-                id = rs.getLong(1);
+                c.connection.rollback();
             }
+            c.connection.setAutoCommit(true);
         }
-        catch (Exception e)
+        catch (SQLException e)
         {
-            throw new RuntimeException(e);
+            //unknown transaction state; do not reuse the connection
+            debug.log(e);
+            c.close();
+            permits.release();
+            return;
         }
-        finally
+        release(c, !committed);
+    }
+
+    private void evictIdle()
+    {
+        long now = System.currentTimeMillis();
+        PooledConnection c;
+        while ((c = idle.peekLast()) != null && c.lastUsed > 0 && now - c.lastUsed > idleTimeout)
         {
-            closeResultSet(rs);
-            closeResultSet(stmt);
+            if (idle.removeLastOccurrence(c))
+            {
+                c.close();
+            }
         }
-        return id;
     }
 
-    private void checkConnection()
+    private static void bind(PreparedStatement ps, Object[] params) throws SQLException
     {
-        if (!isConnected())
+        for (int i = 0; i < params.length; i++)
         {
-            reconnect();
+            if (params[i] == null)
+            {
+                ps.setNull(i + 1, Types.VARCHAR);
+            }
+            else
+            {
+                ps.setObject(i + 1, params[i]);
+            }
         }
     }
 
-    private void reconnect()
+    //returns the connection to the pool when the result set is closed
+    private ResultSet releasing(final ResultSet rs, final Statement stmt, final PooledConnection c)
     {
-        close();
-        connect();
+        InvocationHandler handler = new InvocationHandler()
+        {
+            private boolean released = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("close") && method.getParameterTypes().length == 0)
+                {
+                    if (!released)
+                    {
+                        released = true;
+                        closeResultSet(rs);
+                        closeResultSet(stmt);
+                        release(c, false);
+                    }
+                    return null;
+                }
+                try
+                {
+                    return method.invoke(rs, args);
+                }
+                catch (InvocationTargetException e)
+                {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (ResultSet) Proxy.newProxyInstance(Mysql.class.getClassLoader(), new Class<?>[]
+        {
+            ResultSet.class
+        }, handler);
     }
 
     public static String escape(String s)
@@ -346,4 +688,89 @@ public class Mysql
         ret = ret.replaceAll("\\\\\\\\", "\\\\");
         return ret;
     }
+
+    private static class Transaction
+    {
+
+        private final PooledConnection connection;
+        private boolean failed;
+
+        private Transaction(PooledConnection connection)
+        {
+            this.connection = connection;
+        }
+    }
+
+    private static class PooledConnection
+    {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private long lastUsed;
+
+        private PooledConnection(Connection connection, final int cachesize)
+        {
+            this.connection = connection;
+            this.lastUsed = System.currentTimeMillis();
+
+            //lru cache of prepared statements
+            statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+                {
+                    if (size() > cachesize)
+                    {
+                        closeResultSet(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private PreparedStatement prepare(String sql, boolean generatedkeys) throws SQLException
+        {
+            String key = generatedkeys ? "#" + sql : sql;
+            PreparedStatement ps = statements.get(key);
+            if (ps == null || ps.isClosed())
+            {
+                ps = generatedkeys
+                     ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                     : connection.prepareStatement(sql);
+                statements.put(key, ps);
+            }
+            else
+            {
+                ps.clearParameters();
+            }
+            return ps;
+        }
+
+        private boolean validate()
+        {
+            if (lastUsed > 0 && System.currentTimeMillis() - lastUsed < VALIDATION_INTERVAL)
+            {
+                return true;
+            }
+            try
+            {
+                return connection.isValid(2);
+            }
+            catch (SQLException e)
+            {
+                return false;
+            }
+        }
+
+        private void close()
+        {
+            for (PreparedStatement ps : statements.values())
+            {
+                closeResultSet(ps);
+            }
+            statements.clear();
+            closeResultSet(connection);
+        }
+    }
 }
@@ -261,8 +261,8 @@ public class MysqlConfig
             if (isSubNode(key, node))
             {
                 data.remove(key);
-                String delq = "DELETE FROM " + table + " WHERE `key`='" + key + "'";
-                mysql.runQuery(delq);
+                String delq = "DELETE FROM `" + table + "` WHERE `key`=?";
+                mysql.runQuery(delq, key);
             }
         }
     }
@@ -275,14 +275,14 @@ public class MysqlConfig
     private void save(String key, List<String> values)
     {
         //delete all entries with the given key
-        String delq = "DELETE FROM `" + table + "` WHERE `key`='" + key + "'";
-        mysql.runQuery(delq);
+        String delq = "DELETE FROM `" + table + "` WHERE `key`=?";
+        mysql.runQuery(delq, key);
 
         //add values
         for (String val : values)
         {
-            String insq = "INSERT INTO `" + table + "` (`key`,`value`) VALUES('" + Mysql.escape(key) + "','" + Mysql.escape(val) + "')";
-            mysql.runQuery(insq);
+            String insq = "INSERT INTO `" + table + "` (`key`,`value`) VALUES(?,?)";
+            mysql.runQuery(insq, key, val);
         }
     }
 
@@ -0,0 +1,376 @@
+package net.alpenblock.bungeeperms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A change of a user or group which is sent to the other servers of the network.
+ * <p>
+ * A change carries the changed value, so a receiver applies it to its cache without reading the user or group from
+ * the backend again. The reload changes are for changes which have no delta.
+ * <p>
+ * Changes are sent in binary frames which hold any number of changes:
+ * <pre>
+ * byte   magic (0xB9; never the first byte of a text message)
+ * byte   version
+ * short  number of changes
+ * per change:
+ *   byte  type code
+ *   byte  flags of the present fields (1 target, 2 server, 4 world, 8 value)
+ *   utf   the present fields in that order
+ * </pre>
+ * All changes have the same layout, so a receiver skips the types it does not know.
+ * <p>
+ * Frames are only sent to servers which announced that they read them with the text message
+ * <code>frames;&lt;version&gt;</code>. The others get the text messages of {@link #toMessage()}.
+ */
+@Getter
+@ToString
+public class NetworkChange
+{
+
+    public static final byte MAGIC = (byte) 0xB9;
+    public static final byte VERSION = 1;
+    //command of the text message which announces that frames are read
+    public static final String ANNOUNCE = "frames";
+    //a plugin message has at most 32766 bytes
+    public static final int MAX_FRAME_SIZE = 32000;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int TARGET = 1;
+    private static final int SERVER = 2;
+    private static final int WORLD = 4;
+    private static final int VALUE = 8;
+
+    private final Type type;
+    //user name or uuid, group name or null
+    private final String target;
+    private final String server;
+    private final String world;
+    private final String value;
+
+    private NetworkChange(Type type, String target, String server, String world, String value)
+    {
+        this.type = type;
+        this.target = target;
+        this.server = server;
+        this.world = world;
+        this.value = value;
+    }
+
+    /**
+     * Creates a change of a user.
+     *
+     * @param type the type of the change; one of the user types
+     * @param u the changed user
+     * @param server the server of the change or null
+     * @param world the world of the change or null
+     * @param value the new, added or removed value or null
+     * @return the change
+     */
+    public static NetworkChange user(Type type, User u, String server, String world, String value)
+    {
+        checkKind(type, Kind.USER);
+        String target = BungeePerms.getInstance().getConfig().isUseUUIDs() ? u.getUUID().toString() : u.getName();
+        return new NetworkChange(type, target, Statics.toLower(server), Statics.toLower(world), value);
+    }
+
+    /**
+     * Creates a change of a group.
+     *
+     * @param type the type of the change; one of the group types
+     * @param g the changed group
+     * @param server the server of the change or null
+     * @param world the world of the change or null
+     * @param value the new, added or removed value or null
+     * @return the change
+     */
+    public static NetworkChange group(Type type, Group g, String server, String world, String value)
+    {
+        checkKind(type, Kind.GROUP);
+        return new NetworkChange(type, g.getName(), Statics.toLower(server), Statics.toLower(world), value);
+    }
+
+    /**
+     * Creates a change of all users, all groups or everything.
+     *
+     * @param type the type of the change; one of the reload types of all users or groups
+     * @return the change
+     */
+    public static NetworkChange all(Type type)
+    {
+        checkKind(type, Kind.ALL);
+        return new NetworkChange(type, null, null, null, null);
+    }
+
+    /**
+     * Gets a change which reloads the user or group of this change from the backend.
+     *
+     * @return the reload change
+     */
+    public NetworkChange toReload()
+    {
+        switch (type.getKind())
+        {
+            case USER:
+                return type == Type.USER_DELETE ? this : new NetworkChange(Type.USER_RELOAD, target, null, null, null);
+            case GROUP:
+                return type == Type.GROUP_DELETE ? this : new NetworkChange(Type.GROUP_RELOAD, target, null, null, null);
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * Gets the text message of this change for servers which do not read frames. Text messages carry no values, so
+     * all changes but deletes are sent as reloads.
+     *
+     * @return the text message
+     */
+    public String toMessage()
+    {
+        switch (type)
+        {
+            case USER_DELETE:
+                return "deleteUser;" + target;
+            case GROUP_DELETE:
+                return "deleteGroup;" + target;
+            case RELOAD_USERS:
+                return "reloadUsers";
+            case RELOAD_GROUPS:
+                return "reloadGroups";
+            case RELOAD_ALL:
+                return "reloadall";
+            default:
+                return (type.getKind() == Kind.USER ? "reloadUser;" : "reloadGroup;") + target;
+        }
+    }
+
+    /**
+     * Gets the text message which announces that frames of this version are read.
+     *
+     * @return the announcement
+     */
+    public static String announcement()
+    {
+        return ANNOUNCE + ";" + VERSION;
+    }
+
+    /**
+     * Checks if a plugin message is a frame of changes.
+     *
+     * @param data the plugin message
+     * @return true if the message is a frame, false if it is a text message
+     */
+    public static boolean isFrame(byte[] data)
+    {
+        return data.length >= HEADER_SIZE && data[0] == MAGIC;
+    }
+
+    /**
+     * Encodes the changes into as few frames as possible. The order of the changes is kept. A change which does not
+     * fit into a frame is sent as a reload.
+     *
+     * @param changes the changes
+     * @return the frames
+     */
+    public static List<byte[]> encode(List<NetworkChange> changes)
+    {
+        List<byte[]> frames = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int count = 0;
+        try
+        {
+            for (NetworkChange c : changes)
+            {
+                byte[] b;
+                try
+                {
+                    b = c.write();
+                }
+                catch (UTFDataFormatException e)
+                {
+                    //a value of more than 64k bytes
+                    b = null;
+                }
+                if (b == null || HEADER_SIZE + b.length > MAX_FRAME_SIZE)
+                {
+                    b = c.toReload().write();
+                }
+                if (count == 0xFFFF || HEADER_SIZE + body.size() + b.length > MAX_FRAME_SIZE)
+                {
+                    frames.add(frame(count, body));
+                    body.reset();
+                    count = 0;
+                }
+                body.write(b);
+                count++;
+            }
+            if (count > 0)
+            {
+                frames.add(frame(count, body));
+            }
+        }
+        catch (IOException e)
+        {
+            //byte array streams do not throw
+            throw new IllegalStateException(e);
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes a frame. Changes of unknown types are left out.
+     *
+     * @param data the frame
+     * @return the changes
+     * @throws IOException if the data is no frame of a supported version
+     */
+    public static List<NetworkChange> decode(byte[] data) throws IOException
+    {
+        if (!isFrame(data))
+        {
+            throw new IOException("not a change frame");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.readByte();
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+        {
+            throw new IOException("unsupported change frame version " + version);
+        }
+
+        int count = in.readUnsignedShort();
+        List<NetworkChange> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            int code = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            String target = (flags & TARGET) != 0 ? in.readUTF() : null;
+            String server = (flags & SERVER) != 0 ? in.readUTF() : null;
+            String world = (flags & WORLD) != 0 ? in.readUTF() : null;
+            String value = (flags & VALUE) != 0 ? in.readUTF() : null;
+
+            Type type = Type.getByCode(code);
+            if (type == null)
+            {
+                continue;
+            }
+            changes.add(new NetworkChange(type, target, server, world, value));
+        }
+        return Collections.unmodifiableList(changes);
+    }
+
+    private byte[] write() throws IOException
+    {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(b);
+        out.writeByte(type.getCode());
+        out.writeByte((target != null ? TARGET : 0) | (server != null ? SERVER : 0) | (world != null ? WORLD : 0) | (value != null ? VALUE : 0));
+        for (String s : new String[]
+        {
+            target, server, world, value
+        })
+        {
+            if (s != null)
+            {
+                out.writeUTF(s);
+            }
+        }
+        out.flush();
+        return b.toByteArray();
+    }
+
+    private static byte[] frame(int count, ByteArrayOutputStream body) throws IOException
+    {
+        ByteArrayOutputStream b = new ByteArrayOutputStream(HEADER_SIZE + body.size());
+        DataOutputStream out = new DataOutputStream(b);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeShort(count);
+        body.writeTo(out);
+        out.flush();
+        return b.toByteArray();
+    }
+
+    private static void checkKind(Type type, Kind kind)
+    {
+        if (type.getKind() != kind)
+        {
+            throw new IllegalArgumentException(type + " is no change of kind " + kind);
+        }
+    }
+
+    public static enum Kind
+    {
+
+        USER,
+        GROUP,
+        ALL
+    }
+
+    @Getter
+    public static enum Type
+    {
+
+        //the codes are sent; never change or reuse one
+        USER_RELOAD(1, Kind.USER),
+        USER_DELETE(2, Kind.USER),
+        USER_ADD_GROUP(3, Kind.USER),
+        USER_REMOVE_GROUP(4, Kind.USER),
+        USER_ADD_PERM(5, Kind.USER),
+        USER_REMOVE_PERM(6, Kind.USER),
+        USER_DISPLAY(7, Kind.USER),
+        USER_PREFIX(8, Kind.USER),
+        USER_SUFFIX(9, Kind.USER),
+        GROUP_RELOAD(32, Kind.GROUP),
+        GROUP_DELETE(33, Kind.GROUP),
+        GROUP_ADD_PERM(34, Kind.GROUP),
+        GROUP_REMOVE_PERM(35, Kind.GROUP),
+        GROUP_ADD_INHERITANCE(36, Kind.GROUP),
+        GROUP_REMOVE_INHERITANCE(37, Kind.GROUP),
+        GROUP_DISPLAY(38, Kind.GROUP),
+        GROUP_PREFIX(39, Kind.GROUP),
+        GROUP_SUFFIX(40, Kind.GROUP),
+        GROUP_LADDER(41, Kind.GROUP),
+        GROUP_RANK(42, Kind.GROUP),
+        GROUP_WEIGHT(43, Kind.GROUP),
+        GROUP_DEFAULT(44, Kind.GROUP),
+        RELOAD_USERS(64, Kind.ALL),
+        RELOAD_GROUPS(65, Kind.ALL),
+        RELOAD_ALL(66, Kind.ALL);
+
+        private static final Type[] byCode = new Type[256];
+
+        static
+        {
+            for (Type t : values())
+            {
+                byCode[t.code] = t;
+            }
+        }
+
+        private final int code;
+        private final Kind kind;
+
+        private Type(int code, Kind kind)
+        {
+            this.code = code;
+            this.kind = kind;
+        }
+
+        public static Type getByCode(int code)
+        {
+            return code >= 0 && code < byCode.length ? byCode[code] : null;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.AllArgsConstructor;
+
+/**
+ * Lookup of users which are not loaded, e.g. offline players queried by other plugins.
+ * <p>
+ * Users loaded from the backend are not added to the permissions manager but kept in a bounded cache for a while.
+ * Users which do not exist are remembered too, for a shorter time. Concurrent loads of the same user are merged into
+ * one backend query. Lookups on the main thread never wait for the backend: a miss starts the load on the loader
+ * thread and returns null; the user is there on one of the next calls. Changes use {@link #loadUser(String)}, which
+ * waits.
+ */
+public class OfflineUserLookup
+{
+
+    private final PermissionsManager pm;
+    private final int size;
+    private final long ttl;
+    private final long negativettl;
+    private final ThreadPoolExecutor executor;
+
+    //lower case name or uuid -> entry; guarded by this
+    private final LinkedHashMap<String, Entry> cache;
+    private final Map<String, FutureTask<User>> loading = new HashMap<>();
+    //bumped on each invalidation; loads which started before are not cached
+    private int generation;
+
+    /**
+     * Creates a lookup.
+     *
+     * @param pm the permissions manager
+     * @param size the maximum number of cached users
+     * @param ttl the time in seconds a found user is cached
+     * @param negativettl the time in seconds a user which does not exist is remembered
+     */
+    public OfflineUserLookup(PermissionsManager pm, int size, int ttl, int negativettl)
+    {
+        this.pm = pm;
+        this.size = Math.max(1, size);
+        this.ttl = TimeUnit.SECONDS.toNanos(ttl);
+        this.negativettl = TimeUnit.SECONDS.toNanos(negativettl);
+
+        cache = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > OfflineUserLookup.this.size;
+            }
+        };
+
+        ThreadFactory factory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "BungeePerms Offline Lookup");
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+        //no caller runs policy; the main thread must not load
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(this.size), factory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets a user by its name or uuid. Loaded users are returned directly. Otherwise the user is loaded from the
+     * backend; on the main thread the load runs in the background and null is returned until it is done.
+     *
+     * @param nameoruuid the name or uuid of the user
+     * @return the user or null if it does not exist or is still being loaded
+     */
+    public User getUser(String nameoruuid)
+    {
+        return getUser(nameoruuid, !BungeePerms.getInstance().getPlugin().isMainThread());
+    }
+
+    /**
+     * Gets a user by its name or uuid and waits for the backend if it is not loaded, even on the main thread. For
+     * changes of a user, which must not fail because the user is not cached yet.
+     *
+     * @param nameoruuid the name or uuid of the user
+     * @return the user or null if it does not exist
+     */
+    public User loadUser(String nameoruuid)
+    {
+        return getUser(nameoruuid, true);
+    }
+
+    private User getUser(String nameoruuid, boolean wait)
+    {
+        if (nameoruuid == null)
+        {
+            return null;
+        }
+
+        User u = pm.getUser(nameoruuid, false);
+        if (u != null)
+        {
+            return u;
+        }
+
+        String key = Statics.toLower(nameoruuid);
+        FutureTask<User> task;
+        boolean start;
+        synchronized (this)
+        {
+            Entry e = getEntry(key);
+            if (e != null)
+            {
+                return e.user;
+            }
+
+            task = loading.get(key);
+            start = task == null;
+            if (start)
+            {
+                task = newLoad(key, nameoruuid);
+            }
+        }
+
+        if (!wait)
+        {
+            if (start)
+            {
+                submit(key, task);
+            }
+            return null;
+        }
+
+        if (start)
+        {
+            task.run();
+        }
+        return get(task);
+    }
+
+    /**
+     * Loads a user in the background so that later calls of {@link #getUser(String)} find it.
+     *
+     * @param nameoruuid the name or uuid of the user
+     * @return the future of the user; its result is null if the user does not exist
+     */
+    public Future<User> prefetch(String nameoruuid)
+    {
+        User u = pm.getUser(nameoruuid, false);
+        if (u != null)
+        {
+            return done(u);
+        }
+
+        String key = Statics.toLower(nameoruuid);
+        FutureTask<User> task;
+        synchronized (this)
+        {
+            Entry e = getEntry(key);
+            if (e != null)
+            {
+                return done(e.user);
+            }
+
+            task = loading.get(key);
+            if (task != null)
+            {
+                return task;
+            }
+            task = newLoad(key, nameoruuid);
+        }
+
+        submit(key, task);
+        return task;
+    }
+
+    /**
+     * Drops the cached entries of a user, e.g. because it was loaded into the permissions manager or changed.
+     *
+     * @param u the user
+     */
+    public synchronized void invalidate(User u)
+    {
+        if (u == null)
+        {
+            return;
+        }
+        cache.remove(Statics.toLower(u.getName()));
+        if (u.getUUID() != null)
+        {
+            cache.remove(u.getUUID().toString());
+        }
+        generation++;
+    }
+
+    /**
+     * Drops the cached entry of a name or uuid.
+     *
+     * @param nameoruuid the name or uuid
+     */
+    public synchronized void invalidate(String nameoruuid)
+    {
+        cache.remove(Statics.toLower(nameoruuid));
+        generation++;
+    }
+
+    /**
+     * Drops all cached entries.
+     */
+    public synchronized void clear()
+    {
+        cache.clear();
+        generation++;
+    }
+
+    /**
+     * Stops the loader thread. Queued loads are still processed.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    public synchronized int size()
+    {
+        return cache.size();
+    }
+
+    //callers hold the lock
+    private Entry getEntry(String key)
+    {
+        Entry e = cache.get(key);
+        if (e != null && e.expires - System.nanoTime() < 0)
+        {
+            cache.remove(key);
+            return null;
+        }
+        return e;
+    }
+
+    //creates and registers a load; callers hold the lock
+    private FutureTask<User> newLoad(final String key, final String nameoruuid)
+    {
+        final int gen = generation;
+        FutureTask<User> task = new FutureTask<>(new Callable<User>()
+        {
+            @Override
+            public User call() throws Exception
+            {
+                User u;
+                try
+                {
+                    u = pm.loadUser(nameoruuid);
+                }
+                catch (Exception e)
+                {
+                    //failures are not remembered
+                    synchronized (OfflineUserLookup.this)
+                    {
+                        loading.remove(key);
+                    }
+                    throw e;
+                }
+
+                synchronized (OfflineUserLookup.this)
+                {
+                    loading.remove(key);
+                    //the user might have changed while it was loaded
+                    if (gen == generation)
+                    {
+                        cache.put(key, new Entry(u, System.nanoTime() + (u != null ? ttl : negativettl)));
+                    }
+                }
+                return u;
+            }
+        });
+        loading.put(key, task);
+        return task;
+    }
+
+    private void submit(String key, FutureTask<User> task)
+    {
+        try
+        {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            //queue full or shut down; the next call tries again
+            synchronized (this)
+            {
+                loading.remove(key);
+            }
+            task.cancel(false);
+        }
+    }
+
+    private static User get(Future<User> f)
+    {
+        try
+        {
+            return f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            BungeePerms.getInstance().getDebug().log(e.getCause());
+        }
+        return null;
+    }
+
+    private static Future<User> done(User u)
+    {
+        FutureTask<User> f = new FutureTask<>(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        }, u);
+        f.run();
+        return f;
+    }
+
+    @AllArgsConstructor
+    private static class Entry
+    {
+
+        //null if the user does not exist
+        private final User user;
+        private final long expires;
+    }
+}
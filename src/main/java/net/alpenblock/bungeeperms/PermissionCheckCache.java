@@ -0,0 +1,222 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe, bounded cache of permission check results of one user.
+ * <p>
+ * Results are keyed by (context, permission). Reads do not lock. If the cache grows beyond its maximum size the
+ * least recently used quarter of the results is evicted. Each clear starts a new epoch; a result resolved in an
+ * earlier epoch is not cached, so a check which ran against the old permissions cannot outlive the clear.
+ */
+public class PermissionCheckCache
+{
+
+    private final ConcurrentHashMap<Key, Result> results = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final AtomicInteger epoch = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final int maxSize;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize the maximum number of cached results; 0 or less for no limit
+     */
+    public PermissionCheckCache(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets a cached result.
+     *
+     * @param permission the checked permission
+     * @param context the context of the check
+     * @return the cached result or null if not cached
+     */
+    public Boolean get(String permission, Context context)
+    {
+        Result r = results.get(new Key(context, permission));
+        if (r == null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        r.lastAccess = System.nanoTime();
+        return r.value;
+    }
+
+    /**
+     * Gets the current epoch. Has to be taken before the permissions are read for a check and passed to
+     * {@link #put(String, boolean, Context, int)}.
+     *
+     * @return the current epoch
+     */
+    public int getEpoch()
+    {
+        return epoch.get();
+    }
+
+    /**
+     * Caches a result unless the cache was cleared since the given epoch.
+     *
+     * @param permission the checked permission
+     * @param value the result of the check
+     * @param context the context of the check
+     * @param epoch the epoch taken before the check
+     */
+    public void put(String permission, boolean value, Context context, int epoch)
+    {
+        if (epoch != this.epoch.get())
+        {
+            return;
+        }
+
+        Key k = new Key(context, permission);
+        Result r = new Result(value);
+        results.put(k, r);
+        //a clear which ran meanwhile might have missed the result
+        if (epoch != this.epoch.get())
+        {
+            results.remove(k, r);
+            return;
+        }
+
+        if (maxSize > 0 && results.size() > maxSize)
+        {
+            evict();
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clear()
+    {
+        epoch.incrementAndGet();
+        results.clear();
+    }
+
+    public int size()
+    {
+        return results.size();
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    private void evict()
+    {
+        //only one thread evicts; the others go on
+        if (!evicting.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            long[] stamps = new long[results.size() + 16];
+            int count = 0;
+            for (Result r : results.values())
+            {
+                if (count == stamps.length)
+                {
+                    break;
+                }
+                stamps[count++] = r.lastAccess;
+            }
+            if (count == 0)
+            {
+                return;
+            }
+            Arrays.sort(stamps, 0, count);
+            long threshold = stamps[count / 4];
+
+            Iterator<Map.Entry<Key, Result>> it = results.entrySet().iterator();
+            while (it.hasNext())
+            {
+                if (it.next().getValue().lastAccess <= threshold)
+                {
+                    it.remove();
+                }
+            }
+        }
+        finally
+        {
+            evicting.set(false);
+        }
+    }
+
+    private static class Key
+    {
+
+        private final Context context;
+        private final String permission;
+        private final int hash;
+
+        private Key(Context context, String permission)
+        {
+            this.context = context;
+            this.permission = permission;
+
+            hash = 31 * permission.hashCode() + context.getId();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key k = (Key) o;
+            //contexts are canonical
+            return hash == k.hash && context == k.context && permission.equals(k.permission);
+        }
+    }
+
+    private static class Result
+    {
+
+        private final boolean value;
+        //written without synchronization; a lost update only affects the eviction order
+        private long lastAccess;
+
+        private Result(boolean value)
+        {
+            this.value = value;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+}
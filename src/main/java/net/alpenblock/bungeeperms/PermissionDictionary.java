@@ -0,0 +1,101 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global dictionary of permission nodes.
+ * <p>
+ * Each distinct node gets an int id once; {@link PermissionList}s store the ids instead of strings, so every node is
+ * held as one string no matter how many users and groups have it. Lookups do not lock. Ids are never reused; the
+ * dictionary only grows by the nodes which are used in the permissions.
+ */
+public class PermissionDictionary
+{
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    //id -> node; replaced when it grows
+    private static volatile String[] nodes = new String[256];
+    //guarded by the class lock
+    private static int size;
+
+    /**
+     * Gets the id of a node and adds the node if it is not in the dictionary yet.
+     *
+     * @param node the node
+     * @return the id
+     */
+    public static int id(String node)
+    {
+        Integer id = ids.get(node);
+        if (id != null)
+        {
+            return id;
+        }
+
+        synchronized (PermissionDictionary.class)
+        {
+            id = ids.get(node);
+            if (id != null)
+            {
+                return id;
+            }
+
+            String[] n = nodes;
+            if (size == n.length)
+            {
+                n = Arrays.copyOf(n, size * 2);
+            }
+            n[size] = node;
+            //the node is visible before its id is
+            nodes = n;
+            ids.put(node, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Gets the id of a node without adding it.
+     *
+     * @param node the node
+     * @return the id or -1 if the node is not in the dictionary
+     */
+    public static int lookup(String node)
+    {
+        Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the node of an id.
+     *
+     * @param id the id
+     * @return the node
+     */
+    public static String node(int id)
+    {
+        return nodes[id];
+    }
+
+    public static int size()
+    {
+        return ids.size();
+    }
+
+    /**
+     * Estimates the heap used by the dictionary.
+     *
+     * @return the estimated size in bytes
+     */
+    public static long estimateBytes()
+    {
+        String[] n = nodes;
+        long bytes = Footprint.array(n.length, Footprint.REF);
+        for (String s : ids.keySet())
+        {
+            //string, boxed id and map entry
+            bytes += Footprint.string(s) + Footprint.align(16) + Footprint.align(32) + Footprint.REF;
+        }
+        return bytes;
+    }
+}
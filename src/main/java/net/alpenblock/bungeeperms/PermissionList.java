@@ -0,0 +1,293 @@
+package net.alpenblock.bungeeperms;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.WeakHashMap;
+
+/**
+ * List of permissions stored as ids of the {@link PermissionDictionary}.
+ * <p>
+ * A permission takes 4 bytes instead of a reference to a string of its own. Lists made by {@link #shared(Collection)}
+ * are immutable and there is only one of them per content, so users and groups with the same effective permissions
+ * share one list. Like an ArrayList, a mutable list is not thread safe.
+ */
+public class PermissionList extends AbstractList<String> implements RandomAccess
+{
+
+    private static final int[] EMPTY = new int[0];
+    //content -> the shared list; an entry goes away with its list
+    private static final Map<Ids, WeakReference<PermissionList>> shared = new WeakHashMap<>();
+
+    private int[] ids;
+    private int size;
+    //the content of a shared list; null for mutable lists
+    private final Ids key;
+
+    public PermissionList()
+    {
+        ids = EMPTY;
+        key = null;
+    }
+
+    public PermissionList(Collection<String> perms)
+    {
+        ids = encode(perms);
+        size = ids.length;
+        key = null;
+    }
+
+    private PermissionList(Ids key)
+    {
+        this.ids = key.ids;
+        this.size = ids.length;
+        this.key = key;
+    }
+
+    /**
+     * Gets the shared, immutable list with the given content.
+     *
+     * @param perms the permissions
+     * @return the shared list
+     */
+    public static PermissionList shared(Collection<String> perms)
+    {
+        if (perms instanceof PermissionList && ((PermissionList) perms).key != null)
+        {
+            return (PermissionList) perms;
+        }
+
+        Ids k = new Ids(encode(perms));
+        synchronized (shared)
+        {
+            WeakReference<PermissionList> ref = shared.get(k);
+            PermissionList l = ref == null ? null : ref.get();
+            if (l == null)
+            {
+                l = new PermissionList(k);
+                shared.put(k, new WeakReference<>(l));
+            }
+            return l;
+        }
+    }
+
+    /**
+     * Gets the number of distinct shared lists which are in use.
+     *
+     * @return the number of shared lists
+     */
+    public static int sharedCount()
+    {
+        synchronized (shared)
+        {
+            return shared.size();
+        }
+    }
+
+    public boolean isShared()
+    {
+        return key != null;
+    }
+
+    @Override
+    public String get(int index)
+    {
+        checkIndex(index, size);
+        return PermissionDictionary.node(ids[index]);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public String set(int index, String perm)
+    {
+        checkMutable();
+        checkIndex(index, size);
+        String old = PermissionDictionary.node(ids[index]);
+        ids[index] = PermissionDictionary.id(perm);
+        return old;
+    }
+
+    @Override
+    public void add(int index, String perm)
+    {
+        checkMutable();
+        checkIndex(index, size + 1);
+        int id = PermissionDictionary.id(perm);
+        if (size == ids.length)
+        {
+            ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public String remove(int index)
+    {
+        checkMutable();
+        checkIndex(index, size);
+        String old = PermissionDictionary.node(ids[index]);
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear()
+    {
+        checkMutable();
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int indexOf(Object o)
+    {
+        //a node which is not in the dictionary is in no list
+        int id = o instanceof String ? PermissionDictionary.lookup((String) o) : -1;
+        if (id < 0)
+        {
+            return -1;
+        }
+        for (int i = 0; i < size; i++)
+        {
+            if (ids[i] == id)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o)
+    {
+        int id = o instanceof String ? PermissionDictionary.lookup((String) o) : -1;
+        if (id < 0)
+        {
+            return -1;
+        }
+        for (int i = size - 1; i >= 0; i--)
+        {
+            if (ids[i] == id)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+        {
+            return true;
+        }
+        //the hash code stays the one of a list of the nodes
+        if (o instanceof PermissionList)
+        {
+            //ids and nodes map one to one
+            PermissionList l = (PermissionList) o;
+            if (size != l.size)
+            {
+                return false;
+            }
+            for (int i = 0; i < size; i++)
+            {
+                if (ids[i] != l.ids[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return super.equals(o);
+    }
+
+    /**
+     * Estimates the heap used by this list without the dictionary.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateBytes()
+    {
+        //header, array reference, size, key reference, mod count
+        return Footprint.align(12 + Footprint.REF + 4 + Footprint.REF + 4) + Footprint.array(ids.length, 4);
+    }
+
+    private void checkMutable()
+    {
+        if (key != null)
+        {
+            throw new UnsupportedOperationException("shared permission lists are immutable");
+        }
+    }
+
+    private static void checkIndex(int index, int bound)
+    {
+        if (index < 0 || index >= bound)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+    }
+
+    private static int[] encode(Collection<String> perms)
+    {
+        if (perms instanceof PermissionList)
+        {
+            PermissionList l = (PermissionList) perms;
+            return Arrays.copyOf(l.ids, l.size);
+        }
+
+        int[] a = new int[perms.size()];
+        int i = 0;
+        for (String perm : perms)
+        {
+            a[i++] = PermissionDictionary.id(perm);
+        }
+        return a;
+    }
+
+    private static class Ids
+    {
+
+        private final int[] ids;
+        private final int hash;
+
+        private Ids(int[] ids)
+        {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Ids && hash == ((Ids) o).hash && Arrays.equals(ids, ((Ids) o).ids);
+        }
+    }
+}
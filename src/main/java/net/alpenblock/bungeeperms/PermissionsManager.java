@@ -3,15 +3,19 @@ package net.alpenblock.bungeeperms;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import net.alpenblock.bungeeperms.Lang.MessageType;
+import net.alpenblock.bungeeperms.NetworkChange.Type;
 import net.alpenblock.bungeeperms.io.BackEnd;
 import net.alpenblock.bungeeperms.io.BackEndType;
 import net.alpenblock.bungeeperms.io.MySQL2BackEnd;
@@ -28,7 +32,7 @@ import net.alpenblock.bungeeperms.io.migrate.Migrate2YAML;
 import net.alpenblock.bungeeperms.io.migrate.Migrator;
 import net.alpenblock.bungeeperms.platform.PlatformPlugin;
 import net.alpenblock.bungeeperms.platform.Sender;
-import net.alpenblock.bungeeperms.util.ConcurrentList;
+import net.alpenblock.bungeeperms.util.SnapshotRegistry;
 
 public class PermissionsManager
 {
@@ -43,10 +47,32 @@ public class PermissionsManager
     private BackEnd backEnd;
     @Getter
     private UUIDPlayerDB UUIDPlayerDB;
+    @Getter
+    private OfflineUserLookup offlineLookup;
 
     private List<Group> groups;
-    private List<User> users;
+    private final SnapshotRegistry<User> users = new SnapshotRegistry<>();
     private int permsversion;
+    private volatile InheritanceGraph inheritanceGraph;
+
+    //lookup indexes; names are lower case
+    private final ConcurrentHashMap<String, Group> groupsByName = new ConcurrentHashMap<>();
+    private final SnapshotRegistry.Index<String, User> usersByName = users.addIndex(new SnapshotRegistry.Index<String, User>()
+    {
+        @Override
+        protected String key(User u)
+        {
+            return Statics.toLower(u.getName());
+        }
+    });
+    private final SnapshotRegistry.Index<UUID, User> usersByUUID = users.addIndex(new SnapshotRegistry.Index<UUID, User>()
+    {
+        @Override
+        protected UUID key(User u)
+        {
+            return u.getUUID();
+        }
+    });
 
     private final ReadWriteLock grouplock = new ReentrantReadWriteLock();
     @Getter(value = AccessLevel.PACKAGE) //for cleanup
@@ -71,6 +97,12 @@ public class PermissionsManager
     public final void loadConfig()
     {
         config.load();
+        if (offlineLookup != null)
+        {
+            offlineLookup.shutdown();
+        }
+        offlineLookup = new OfflineUserLookup(this, config.getOfflineLookupSize(), config.getOfflineLookupTTL(), config.getOfflineLookupNegativeTTL());
+
         BackEndType bet = config.getBackEndType();
         switch (bet)
         {
@@ -118,6 +150,8 @@ public class PermissionsManager
         try
         {
             groups = backEnd.loadGroups();
+            reindexGroups();
+            inheritanceGraph = null;
         }
         finally
         {
@@ -127,12 +161,13 @@ public class PermissionsManager
         userlock.writeLock().lock();
         try
         {
-            users = new ConcurrentList<>();
+            users.clear();
         }
         finally
         {
             userlock.writeLock().unlock();
         }
+        offlineLookup.clear();
 
         //load permsversion
         permsversion = backEnd.loadVersion();
@@ -150,6 +185,12 @@ public class PermissionsManager
             return;
         }
 
+        //build the effective group perms bottom up; each group reuses the perms of the groups it inherits
+        for (Group g : getInheritanceGraph().getOrder())
+        {
+            g.getEffectivePerms();
+        }
+
         //load online players; allows reload
         for (Sender s : BungeePerms.getInstance().getPlugin().getPlayers())
         {
@@ -187,6 +228,10 @@ public class PermissionsManager
         {
             return;
         }
+
+        //write buffered changes before the backend is replaced
+        backEnd.flush();
+
         userlock.writeLock().lock();
         try
         {
@@ -255,10 +300,13 @@ public class PermissionsManager
             grouplock.readLock().unlock();
         }
 
+        //cached offline users might still have removed groups
+        offlineLookup.clear();
+
         userlock.readLock().lock();
         try
         {
-            for (User u : users)
+            for (User u : users.snapshot())
             {
                 for (int j = 0; j < u.getGroups().size(); j++)
                 {
@@ -268,12 +316,17 @@ public class PermissionsManager
                         j--;
                     }
                 }
-                backEnd.saveUserGroups(u);
+
+                //a placeholder is never saved
+                if (!u.isPlaceholder())
+                {
+                    backEnd.saveUserGroups(u);
+                }
             }
 
             //perms recalc and bukkit perms update
             //do this in 2 seperate loops to keep validation clean
-            for (User u : users)
+            for (User u : users.snapshot())
             {
                 u.recalcPerms();
 
@@ -309,7 +362,7 @@ public class PermissionsManager
      * @return the main group of the user (highest rank)
      * @throws NullPointerException if player is null
      */
-    public synchronized Group getMainGroup(User player)
+    public Group getMainGroup(User player)
     {
         if (player == null)
         {
@@ -337,7 +390,7 @@ public class PermissionsManager
      * @return the next group in the same ladder or null if the group has no next group
      * @throws IllegalArgumentException if the group ladder does not exist (anymore)
      */
-    public synchronized Group getNextGroup(Group group)
+    public Group getNextGroup(Group group)
     {
         List<Group> laddergroups = getLadderGroups(group.getLadder());
 
@@ -365,7 +418,7 @@ public class PermissionsManager
      * @return the previous group in the same ladder or null if the group has no previous group
      * @throws IllegalArgumentException if the group ladder does not exist (anymore)
      */
-    public synchronized Group getPreviousGroup(Group group)
+    public Group getPreviousGroup(Group group)
     {
         List<Group> laddergroups = getLadderGroups(group.getLadder());
 
@@ -392,7 +445,7 @@ public class PermissionsManager
      * @param ladder the ladder of the groups to get
      * @return a sorted list of all matched groups
      */
-    public synchronized List<Group> getLadderGroups(String ladder)
+    public List<Group> getLadderGroups(String ladder)
     {
         List<Group> ret = new ArrayList<>();
 
@@ -422,7 +475,7 @@ public class PermissionsManager
      *
      * @return a list of all ladders
      */
-    public synchronized List<String> getLadders()
+    public List<String> getLadders()
     {
         List<String> ret = new ArrayList<>();
 
@@ -450,7 +503,7 @@ public class PermissionsManager
      *
      * @return a list of default groups
      */
-    public synchronized List<Group> getDefaultGroups()
+    public List<Group> getDefaultGroups()
     {
         List<Group> ret = new ArrayList<>();
         grouplock.readLock().lock();
@@ -477,32 +530,14 @@ public class PermissionsManager
      * @param groupname the name of the group to get
      * @return the found group if any or null
      */
-    public synchronized Group getGroup(String groupname)
+    public Group getGroup(String groupname)
     {
         if (groupname == null)
         {
             return null;
         }
 
-        grouplock.readLock().lock();
-        try
-        {
-            for (Group g : groups)
-            {
-                if (g.getName().equalsIgnoreCase(groupname))
-                {
-                    // this is java runtime convention ...
-                    // finally will always be executed
-//                    grouplock.readLock().unlock();
-                    return g;
-                }
-            }
-        }
-        finally
-        {
-            grouplock.readLock().unlock();
-        }
-        return null;
+        return groupsByName.get(Statics.toLower(groupname));
     }
 
     /**
@@ -511,7 +546,7 @@ public class PermissionsManager
      * @param usernameoruuid the name or the UUID of the user to get
      * @return the found user or null if it does not exist
      */
-    public synchronized User getUser(String usernameoruuid)
+    public User getUser(String usernameoruuid)
     {
         return getUser(usernameoruuid, true);
     }
@@ -523,7 +558,7 @@ public class PermissionsManager
      * @param loadfromdb whether or not to load the user from the database if not already loaded
      * @return the found user or null if it does not exist
      */
-    public synchronized User getUser(String usernameoruuid, boolean loadfromdb)
+    public User getUser(String usernameoruuid, boolean loadfromdb)
     {
         if (usernameoruuid == null)
         {
@@ -533,64 +568,55 @@ public class PermissionsManager
         UUID uuid = Statics.parseUUID(usernameoruuid);
         if (config.isUseUUIDs() && uuid != null)
         {
-            return getUser(uuid);
+            return getUser(uuid, loadfromdb);
         }
 
-        userlock.readLock().lock();
-        try
-        {
-            for (User u : users)
-            {
-                if (u.getName().equalsIgnoreCase(usernameoruuid))
-                {
-                    // this is java runtime convention ...
-                    // finally will always be executed
-//                    userlock.readLock().unlock();
-                    return u;
-                }
-            }
-        }
-        finally
+        User cached = usersByName.get(Statics.toLower(usernameoruuid));
+        if (cached != null)
         {
-            userlock.readLock().unlock();
+            return cached;
         }
 
         //load user from database
         if (loadfromdb)
         {
-            User u = null;
-            if (config.isUseUUIDs())
-            {
-                if (uuid == null)
-                {
-                    uuid = UUIDPlayerDB.getUUID(usernameoruuid);
-                }
-                if (uuid != null)
-                {
-                    u = backEnd.loadUser(uuid);
-                }
-            }
-            else
-            {
-                u = backEnd.loadUser(usernameoruuid);
-            }
+            User u = loadUser(usernameoruuid);
             if (u != null)
             {
-                addUserToCache(u);
-                return u;
+                return addUserToCacheIfAbsent(u);
             }
         }
 
         return null;
     }
 
+    /**
+     * Loads a user from the database without adding it to the cache.
+     *
+     * @param usernameoruuid the name or the UUID of the user to load
+     * @return the loaded user or null if it does not exist
+     */
+    public User loadUser(String usernameoruuid)
+    {
+        if (config.isUseUUIDs())
+        {
+            UUID uuid = Statics.parseUUID(usernameoruuid);
+            if (uuid == null)
+            {
+                uuid = UUIDPlayerDB.getUUID(usernameoruuid);
+            }
+            return uuid != null ? backEnd.loadUser(uuid) : null;
+        }
+        return backEnd.loadUser(usernameoruuid);
+    }
+
     /**
      * Gets a user by its UUID. If the user is not loaded it will be loaded.
      *
      * @param uuid the uuid of the user to get
      * @return the found user or null if it does not exist
      */
-    public synchronized User getUser(UUID uuid)
+    public User getUser(UUID uuid)
     {
         return getUser(uuid, true);
     }
@@ -602,30 +628,17 @@ public class PermissionsManager
      * @param loadfromdb whether or not to load the user from the database if not already loaded
      * @return the found user or null if it does not exist
      */
-    public synchronized User getUser(UUID uuid, boolean loadfromdb)
+    public User getUser(UUID uuid, boolean loadfromdb)
     {
         if (uuid == null)
         {
             return null;
         }
 
-        userlock.readLock().lock();
-        try
-        {
-            for (User u : users)
-            {
-                if (u.getUUID().equals(uuid))
-                {
-                    // this is java runtime convention ...
-                    // finally will always be executed
-//                    userlock.readLock().unlock();
-                    return u;
-                }
-            }
-        }
-        finally
+        User cached = usersByUUID.get(uuid);
+        if (cached != null)
         {
-            userlock.readLock().unlock();
+            return cached;
         }
 
         //load user from database
@@ -634,8 +647,7 @@ public class PermissionsManager
             User u = backEnd.loadUser(uuid);
             if (u != null)
             {
-                addUserToCache(u);
-                return u;
+                return addUserToCacheIfAbsent(u);
             }
         }
 
@@ -651,6 +663,89 @@ public class PermissionsManager
         return u;
     }
 
+    /**
+     * Creates a user with the default groups for a player whose load failed or timed out and adds it to the cache.
+     * The placeholder is never saved: changes of it load the real user first, and
+     * {@link #replacePlaceholder(User, User)} puts the real user in its place once it is loaded.
+     *
+     * @param playername the name of the player
+     * @param uuid the uuid of the player or null if uuids are not used
+     * @return the placeholder
+     */
+    public User createPlaceholderUser(String playername, UUID uuid)
+    {
+        List<Group> groups = getDefaultGroups();
+        User u = new User(playername, uuid, groups, new ArrayList<String>(), new HashMap<String, Server>(), null, null, null);
+        u.setPlaceholder(true);
+        addUserToCache(u);
+
+        return u;
+    }
+
+    /**
+     * Replaces a placeholder by the loaded user.
+     *
+     * @param placeholder the placeholder
+     * @param loaded the loaded user or null if the user does not exist; then the placeholder becomes the new user
+     * and is saved
+     * @return the user which is cached now or null if the placeholder was already replaced or is not cached anymore
+     */
+    public User replacePlaceholder(User placeholder, User loaded)
+    {
+        synchronized (placeholder)
+        {
+            if (!placeholder.isPlaceholder())
+            {
+                return null;
+            }
+            placeholder.setPlaceholder(false);
+
+            if (loaded == null)
+            {
+                //a new player after all
+                backEnd.saveUser(placeholder, true);
+                return placeholder;
+            }
+
+            //the player left meanwhile
+            if (getCachedUser(placeholder) != placeholder)
+            {
+                return null;
+            }
+            removeUserFromCache(placeholder);
+            return addUserToCacheIfAbsent(loaded);
+        }
+    }
+
+    //a placeholder must not be saved over the real user; loads the real user in its place
+    private User loaded(User u)
+    {
+        if (!u.isPlaceholder())
+        {
+            return u;
+        }
+
+        User real = config.isUseUUIDs() ? backEnd.loadUser(u.getUUID()) : backEnd.loadUser(u.getName());
+        User replaced = replacePlaceholder(u, real);
+        if (replaced != null)
+        {
+            return replaced;
+        }
+
+        //replaced meanwhile
+        User cached = getCachedUser(u);
+        if (cached != null && !cached.isPlaceholder())
+        {
+            return cached;
+        }
+        return real != null ? real : u;
+    }
+
+    private User getCachedUser(User u)
+    {
+        return config.isUseUUIDs() ? getUser(u.getUUID(), false) : getUser(u.getName(), false);
+    }
+
     /**
      * Gets an unmodifiable list of all groups
      *
@@ -672,23 +767,13 @@ public class PermissionsManager
     }
 
     /**
-     * Gets an unmodifiable list of all loaded users
+     * Gets an unmodifiable snapshot of all loaded users. The snapshot does not change if users are added or removed.
      *
      * @return an unmodifiable list of all loaded users
      */
     public List<User> getUsers()
     {
-        List<User> l;
-        userlock.readLock().lock();
-        try
-        {
-            l = Collections.unmodifiableList(users);
-        }
-        finally
-        {
-            userlock.readLock().unlock();
-        }
-        return l;
+        return users.snapshot();
     }
 
     /**
@@ -724,6 +809,7 @@ public class PermissionsManager
 
         //database
         backEnd.deleteUser(user);
+        offlineLookup.invalidate(user);
 
         //send bukkit update infoif(useUUIDs)
         BungeePerms.getInstance().getNetworkNotifier().deleteUser(user, null);
@@ -786,7 +872,9 @@ public class PermissionsManager
         try
         {
             groups.add(group);
+            groupsByName.put(Statics.toLower(group.getName()), group);
             Collections.sort(groups);
+            inheritanceGraph = null;
         }
         finally
         {
@@ -835,6 +923,9 @@ public class PermissionsManager
      */
     public void addUserGroup(User user, Group group)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         user.getGroups().add(group);
         Collections.sort(user.getGroups());
@@ -846,7 +937,7 @@ public class PermissionsManager
         user.recalcPerms();
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_ADD_GROUP, user, null, null, group.getName()));
     }
 
     /**
@@ -857,6 +948,9 @@ public class PermissionsManager
      */
     public void removeUserGroup(User user, Group group)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         user.getGroups().remove(group);
         Collections.sort(user.getGroups());
@@ -868,7 +962,7 @@ public class PermissionsManager
         user.recalcPerms();
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_REMOVE_GROUP, user, null, null, group.getName()));
     }
 
     /**
@@ -879,6 +973,9 @@ public class PermissionsManager
      */
     public void addUserPerm(User user, String perm)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         user.getExtraPerms().add(Statics.toLower(perm));
 
@@ -889,7 +986,7 @@ public class PermissionsManager
         user.recalcPerms();
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_ADD_PERM, user, null, null, Statics.toLower(perm)));
     }
 
     /**
@@ -900,6 +997,9 @@ public class PermissionsManager
      */
     public void removeUserPerm(User user, String perm)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         user.getExtraPerms().remove(Statics.toLower(perm));
 
@@ -910,7 +1010,7 @@ public class PermissionsManager
         user.recalcPerms();
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_REMOVE_PERM, user, null, null, Statics.toLower(perm)));
     }
 
     /**
@@ -922,6 +1022,9 @@ public class PermissionsManager
      */
     public void addUserPerServerPerm(User user, String server, String perm)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         Server srv = user.getServer(server);
         srv.getPerms().add(Statics.toLower(perm));
@@ -933,7 +1036,7 @@ public class PermissionsManager
         user.recalcPerms(Statics.toLower(server));
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_ADD_PERM, user, server, null, Statics.toLower(perm)));
     }
 
     /**
@@ -945,6 +1048,9 @@ public class PermissionsManager
      */
     public void removeUserPerServerPerm(User user, String server, String perm)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         Server srv = user.getServer(server);
         srv.getPerms().remove(Statics.toLower(perm));
@@ -956,7 +1062,7 @@ public class PermissionsManager
         user.recalcPerms(server);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_REMOVE_PERM, user, server, null, Statics.toLower(perm)));
     }
 
     /**
@@ -969,6 +1075,9 @@ public class PermissionsManager
      */
     public void addUserPerServerWorldPerm(User user, String server, String world, String perm)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         Server srv = user.getServer(server);
         World w = srv.getWorld(world);
@@ -981,7 +1090,7 @@ public class PermissionsManager
         user.recalcPerms(server, world);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_ADD_PERM, user, server, world, Statics.toLower(perm)));
     }
 
     /**
@@ -994,6 +1103,9 @@ public class PermissionsManager
      */
     public void removeUserPerServerWorldPerm(User user, String server, String world, String perm)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         Server srv = user.getServer(server);
         World w = srv.getWorld(world);
@@ -1006,7 +1118,7 @@ public class PermissionsManager
         user.recalcPerms(server, world);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_REMOVE_PERM, user, server, world, Statics.toLower(perm)));
     }
 
     /**
@@ -1019,6 +1131,9 @@ public class PermissionsManager
      */
     public void setUserDisplay(User user, String display, String server, String world)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         if (server == null)
         {
@@ -1037,7 +1152,7 @@ public class PermissionsManager
         backEnd.saveUserDisplay(user, Statics.toLower(server), Statics.toLower(world));
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_DISPLAY, user, server, world, display));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchUserChangeEvent(user);
@@ -1053,6 +1168,9 @@ public class PermissionsManager
      */
     public void setUserPrefix(User user, String prefix, String server, String world)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         if (server == null)
         {
@@ -1067,11 +1185,13 @@ public class PermissionsManager
             user.getServer(server).getWorld(world).setPrefix(prefix);
         }
 
+        user.flushDisplayCache();
+
         //database
         backEnd.saveUserPrefix(user, Statics.toLower(server), Statics.toLower(world));
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_PREFIX, user, server, world, prefix));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchUserChangeEvent(user);
@@ -1087,6 +1207,9 @@ public class PermissionsManager
      */
     public void setUserSuffix(User user, String suffix, String server, String world)
     {
+        //a placeholder is never saved
+        user = loaded(user);
+
         //cache
         if (server == null)
         {
@@ -1101,11 +1224,13 @@ public class PermissionsManager
             user.getServer(server).getWorld(world).setSuffix(suffix);
         }
 
+        user.flushDisplayCache();
+
         //database
         backEnd.saveUserSuffix(user, Statics.toLower(server), Statics.toLower(world));
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadUser(user, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.user(Type.USER_SUFFIX, user, server, world, suffix));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchUserChangeEvent(user);
@@ -1126,17 +1251,10 @@ public class PermissionsManager
         backEnd.saveGroupPerms(group);
 
         //recalc perms
-        for (Group g : groups)
-        {
-            g.recalcPerms();
-        }
-        for (User u : users)
-        {
-            u.recalcPerms();
-        }
+        recalcGroupPerms(group);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_ADD_PERM, group, null, null, Statics.toLower(perm)));
     }
 
     /**
@@ -1154,17 +1272,10 @@ public class PermissionsManager
         backEnd.saveGroupPerms(group);
 
         //recalc perms
-        for (Group g : groups)
-        {
-            g.recalcPerms();
-        }
-        for (User u : users)
-        {
-            u.recalcPerms();
-        }
+        recalcGroupPerms(group);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_REMOVE_PERM, group, null, null, Statics.toLower(perm)));
     }
 
     /**
@@ -1184,17 +1295,10 @@ public class PermissionsManager
         backEnd.saveGroupPerServerPerms(group, Statics.toLower(server));
 
         //recalc perms
-        for (Group g : groups)
-        {
-            g.recalcPerms(server);
-        }
-        for (User u : users)
-        {
-            u.recalcPerms();
-        }
+        recalcGroupPerms(group, server);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_ADD_PERM, group, server, null, Statics.toLower(perm)));
     }
 
     /**
@@ -1215,17 +1319,10 @@ public class PermissionsManager
         backEnd.saveGroupPerServerPerms(group, Statics.toLower(server));
 
         //recalc perms
-        for (Group g : groups)
-        {
-            g.recalcPerms(server);
-        }
-        for (User u : users)
-        {
-            u.recalcPerms();
-        }
+        recalcGroupPerms(group, server);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_REMOVE_PERM, group, server, null, Statics.toLower(perm)));
     }
 
     /**
@@ -1247,17 +1344,10 @@ public class PermissionsManager
         backEnd.saveGroupPerServerWorldPerms(group, Statics.toLower(server), Statics.toLower(world));
 
         //recalc perms
-        for (Group g : groups)
-        {
-            g.recalcPerms(server, world);
-        }
-        for (User u : users)
-        {
-            u.recalcPerms();
-        }
+        recalcGroupPerms(group, server, world);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_ADD_PERM, group, server, world, Statics.toLower(perm)));
     }
 
     /**
@@ -1279,17 +1369,10 @@ public class PermissionsManager
         backEnd.saveGroupPerServerWorldPerms(group, Statics.toLower(server), Statics.toLower(world));
 
         //recalc perms
-        for (Group g : groups)
-        {
-            g.recalcPerms(server, world);
-        }
-        for (User u : users)
-        {
-            u.recalcPerms();
-        }
+        recalcGroupPerms(group, server, world);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_REMOVE_PERM, group, server, world, Statics.toLower(perm)));
     }
 
     /**
@@ -1303,22 +1386,16 @@ public class PermissionsManager
         //cache
         group.getInheritances().add(toadd.getName());
         Collections.sort(group.getInheritances());
+        invalidateInheritanceGraph();
 
         //database
         backEnd.saveGroupInheritances(group);
 
         //recalc perms
-        for (Group g : groups)
-        {
-            g.recalcPerms();
-        }
-        for (User u : users)
-        {
-            u.recalcPerms();
-        }
+        recalcGroupPerms(group);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_ADD_INHERITANCE, group, null, null, toadd.getName()));
     }
 
     /**
@@ -1332,22 +1409,16 @@ public class PermissionsManager
         //cache
         group.getInheritances().remove(toremove.getName());
         Collections.sort(group.getInheritances());
+        invalidateInheritanceGraph();
 
         //database
         backEnd.saveGroupInheritances(group);
 
         //recalc perms
-        for (Group g : groups)
-        {
-            g.recalcPerms();
-        }
-        for (User u : users)
-        {
-            u.recalcPerms();
-        }
+        recalcGroupPerms(group);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_REMOVE_INHERITANCE, group, null, null, toremove.getName()));
     }
 
     /**
@@ -1365,7 +1436,7 @@ public class PermissionsManager
         backEnd.saveGroupLadder(group);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_LADDER, group, null, null, ladder));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(group);
@@ -1386,8 +1457,12 @@ public class PermissionsManager
         //database
         backEnd.saveGroupRank(group);
 
+        //recalc perms; inherited groups are merged in rank order, which the graph keeps
+        invalidateInheritanceGraph();
+        recalcGroupPerms(group);
+
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_RANK, group, null, null, String.valueOf(rank)));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(group);
@@ -1409,7 +1484,7 @@ public class PermissionsManager
         backEnd.saveGroupWeight(group);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_WEIGHT, group, null, null, String.valueOf(weight)));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(group);
@@ -1430,7 +1505,7 @@ public class PermissionsManager
         backEnd.saveGroupDefault(group);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_DEFAULT, group, null, null, String.valueOf(isdefault)));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(group);
@@ -1464,7 +1539,7 @@ public class PermissionsManager
         backEnd.saveGroupDisplay(group, server, world);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_DISPLAY, group, server, world, display));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(group);
@@ -1494,11 +1569,13 @@ public class PermissionsManager
             group.getServer(server).getWorld(world).setPrefix(prefix);
         }
 
+        flushDisplayCaches(group);
+
         //database
         backEnd.saveGroupPrefix(group, server, world);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_PREFIX, group, server, world, prefix));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(group);
@@ -1528,11 +1605,13 @@ public class PermissionsManager
             group.getServer(server).getWorld(world).setSuffix(suffix);
         }
 
+        flushDisplayCaches(group);
+
         //database
         backEnd.saveGroupSuffix(group, server, world);
 
         //send bukkit update info
-        BungeePerms.getInstance().getNetworkNotifier().reloadGroup(group, null);
+        BungeePerms.getInstance().getNetworkNotifier().sendChange(NetworkChange.group(Type.GROUP_SUFFIX, group, server, world, suffix));
 
         //call event
         BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(group);
@@ -1690,47 +1769,20 @@ public class PermissionsManager
             return;
         }
 
-        boolean holdread = false;
         grouplock.writeLock().lock();
         try
         {
             backEnd.reloadGroup(g);
             Collections.sort(groups);
-
-            grouplock.readLock().lock();
-            holdread = true;
+            reindexGroups();
+            inheritanceGraph = null;
         }
         finally
         {
             grouplock.writeLock().unlock();
         }
-        try
-        {
-            for (Group gr : groups)
-            {
-                gr.recalcPerms();
-            }
-        }
-        finally
-        {
-            if (holdread)
-            {
-                grouplock.readLock().unlock();
-            }
-        }
 
-        userlock.readLock().lock();
-        try
-        {
-            for (User u : users)
-            {
-                u.recalcPerms();
-            }
-        }
-        finally
-        {
-            userlock.readLock().unlock();
-        }
+        recalcGroupPerms(g);
     }
 
     public void reloadUsers()
@@ -1738,7 +1790,7 @@ public class PermissionsManager
         userlock.readLock().lock();
         try
         {
-            for (User u : users)
+            for (User u : users.snapshot())
             {
                 backEnd.reloadUser(u);
                 u.recalcPerms();
@@ -1761,6 +1813,8 @@ public class PermissionsManager
                 backEnd.reloadGroup(g);
             }
             Collections.sort(groups);
+            reindexGroups();
+            inheritanceGraph = null;
 
             grouplock.readLock().lock();
             holdread = true;
@@ -1787,7 +1841,7 @@ public class PermissionsManager
         userlock.readLock().lock();
         try
         {
-            for (User u : users)
+            for (User u : users.snapshot())
             {
                 u.recalcPerms();
             }
@@ -1798,6 +1852,197 @@ public class PermissionsManager
         }
     }
 
+    /**
+     * Applies a change which was made on another server to the cache. Only the reloads read from the backend. Reloading
+     * everything is up to the platform.
+     *
+     * @param change the change
+     */
+    public void applyChange(NetworkChange change)
+    {
+        switch (change.getType().getKind())
+        {
+            case USER:
+                User u = getUser(change.getTarget(), false);
+                if (u == null)
+                {
+                    //not loaded here; the next load reads the change from the backend
+                    offlineLookup.invalidate(change.getTarget());
+                    return;
+                }
+                //the loaded user might already have the change; the changes are idempotent
+                applyUserChange(loaded(u), change);
+                break;
+            case GROUP:
+                Group g = getGroup(change.getTarget());
+                if (g == null)
+                {
+                    debug.log("Group " + change.getTarget() + " not found!!!");
+                    return;
+                }
+                applyGroupChange(g, change);
+                break;
+            default:
+                if (change.getType() == Type.RELOAD_USERS)
+                {
+                    reloadUsers();
+                }
+                else if (change.getType() == Type.RELOAD_GROUPS)
+                {
+                    reloadGroups();
+                }
+                break;
+        }
+    }
+
+    private void applyUserChange(User u, NetworkChange change)
+    {
+        String server = change.getServer();
+        String world = change.getWorld();
+        switch (change.getType())
+        {
+            case USER_RELOAD:
+                backEnd.reloadUser(u);
+                u.recalcPerms();
+                break;
+            case USER_DELETE:
+                removeUserFromCache(u);
+                break;
+            case USER_ADD_GROUP:
+            case USER_REMOVE_GROUP:
+                Group g = getGroup(change.getValue());
+                if (g == null)
+                {
+                    //a deleted group; it is removed by the group validation
+                    u.recalcPerms();
+                    break;
+                }
+                //same as on the sending server, so both caches stay alike
+                applyDelta(u.getGroups(), g, change.getType() == Type.USER_ADD_GROUP);
+                Collections.sort(u.getGroups());
+                u.recalcPerms();
+                break;
+            case USER_ADD_PERM:
+            case USER_REMOVE_PERM:
+                applyDelta(getPermable(u, server, world).getPerms(), change.getValue(), change.getType() == Type.USER_ADD_PERM);
+
+                if (server == null)
+                {
+                    u.recalcPerms();
+                }
+                else if (world == null)
+                {
+                    u.recalcPerms(server);
+                }
+                else
+                {
+                    u.recalcPerms(server, world);
+                }
+                break;
+            case USER_DISPLAY:
+                getPermable(u, server, world).setDisplay(change.getValue());
+                BungeePerms.getInstance().getEventDispatcher().dispatchUserChangeEvent(u);
+                break;
+            case USER_PREFIX:
+                getPermable(u, server, world).setPrefix(change.getValue());
+                u.flushDisplayCache();
+                BungeePerms.getInstance().getEventDispatcher().dispatchUserChangeEvent(u);
+                break;
+            case USER_SUFFIX:
+                getPermable(u, server, world).setSuffix(change.getValue());
+                u.flushDisplayCache();
+                BungeePerms.getInstance().getEventDispatcher().dispatchUserChangeEvent(u);
+                break;
+        }
+    }
+
+    private void applyGroupChange(Group g, NetworkChange change)
+    {
+        String server = change.getServer();
+        String world = change.getWorld();
+        switch (change.getType())
+        {
+            case GROUP_RELOAD:
+                reloadGroup(g.getName());
+                break;
+            case GROUP_DELETE:
+                removeGroupFromCache(g);
+                recalcGroupPerms(g);
+                break;
+            case GROUP_ADD_PERM:
+            case GROUP_REMOVE_PERM:
+                applyDelta(getPermable(g, server, world).getPerms(), change.getValue(), change.getType() == Type.GROUP_ADD_PERM);
+                recalcGroupPerms(g, server, world);
+                break;
+            case GROUP_ADD_INHERITANCE:
+            case GROUP_REMOVE_INHERITANCE:
+                applyDelta(g.getInheritances(), change.getValue(), change.getType() == Type.GROUP_ADD_INHERITANCE);
+                Collections.sort(g.getInheritances());
+                invalidateInheritanceGraph();
+                recalcGroupPerms(g);
+                break;
+            case GROUP_DISPLAY:
+                getPermable(g, server, world).setDisplay(change.getValue());
+                BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(g);
+                break;
+            case GROUP_PREFIX:
+                getPermable(g, server, world).setPrefix(change.getValue());
+                flushDisplayCaches(g);
+                BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(g);
+                break;
+            case GROUP_SUFFIX:
+                getPermable(g, server, world).setSuffix(change.getValue());
+                flushDisplayCaches(g);
+                BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(g);
+                break;
+            case GROUP_LADDER:
+                g.setLadder(change.getValue());
+                BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(g);
+                break;
+            case GROUP_RANK:
+                g.setRank(Integer.parseInt(change.getValue()));
+                Collections.sort(groups);
+                invalidateInheritanceGraph();
+                recalcGroupPerms(g);
+                BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(g);
+                break;
+            case GROUP_WEIGHT:
+                g.setWeight(Integer.parseInt(change.getValue()));
+                Collections.sort(groups);
+                BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(g);
+                break;
+            case GROUP_DEFAULT:
+                g.setIsdefault(Boolean.parseBoolean(change.getValue()));
+                BungeePerms.getInstance().getEventDispatcher().dispatchGroupChangeEvent(g);
+                break;
+        }
+    }
+
+    //a change can arrive twice (forwarded or after a reload which already has it), so applying it again changes nothing
+    private static <T> void applyDelta(List<T> l, T value, boolean add)
+    {
+        if (add)
+        {
+            if (!l.contains(value))
+            {
+                l.add(value);
+            }
+        }
+        else
+        {
+            l.removeAll(Collections.singleton(value));
+        }
+    }
+
+    private static Permable getPermable(PermEntity e, String server, String world)
+    {
+        if (server == null)
+        {
+            return e;
+        }
+        return world == null ? e.getServer(server) : e.getServer(server).getWorld(world);
+    }
+
     public void addUserToCache(User u)
     {
         userlock.writeLock().lock();
@@ -1809,6 +2054,30 @@ public class PermissionsManager
         {
             userlock.writeLock().unlock();
         }
+        offlineLookup.invalidate(u);
+    }
+
+    /**
+     * Adds a user to the cache unless a user with the same UUID (or name if the user has no UUID) is already cached.
+     *
+     * @param u the user to add
+     * @return the cached user; either u or the user which was already cached
+     */
+    public User addUserToCacheIfAbsent(User u)
+    {
+        User cached;
+        userlock.writeLock().lock();
+        try
+        {
+            //another thread might have loaded the same user meanwhile
+            cached = u.getUUID() != null ? users.addIfAbsent(u, usersByUUID) : users.addIfAbsent(u, usersByName);
+        }
+        finally
+        {
+            userlock.writeLock().unlock();
+        }
+        offlineLookup.invalidate(cached);
+        return cached;
     }
 
     public void removeUserFromCache(User u)
@@ -1822,6 +2091,7 @@ public class PermissionsManager
         {
             userlock.writeLock().unlock();
         }
+        offlineLookup.invalidate(u);
     }
 
     public void addGroupToCache(Group g)
@@ -1830,6 +2100,8 @@ public class PermissionsManager
         try
         {
             groups.add(g);
+            groupsByName.put(Statics.toLower(g.getName()), g);
+            inheritanceGraph = null;
         }
         finally
         {
@@ -1843,10 +2115,202 @@ public class PermissionsManager
         try
         {
             groups.remove(g);
+            if (g != null)
+            {
+                groupsByName.remove(Statics.toLower(g.getName()), g);
+            }
+            inheritanceGraph = null;
+        }
+        finally
+        {
+            grouplock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recalculates the permissions of the given group, of all groups inheriting it and of all loaded users in one of
+     * these groups. The permissions are recalculated lazily on their next use.
+     *
+     * @param group the changed group
+     */
+    public void recalcGroupPerms(Group group)
+    {
+        recalcGroupPerms(group, null, null);
+    }
+
+    /**
+     * Recalculates the permissions on the given server of the given group, of all groups inheriting it and of all
+     * loaded users in one of these groups.
+     *
+     * @param group the changed group
+     * @param server the server the group changed on
+     */
+    public void recalcGroupPerms(Group group, String server)
+    {
+        recalcGroupPerms(group, server, null);
+    }
+
+    /**
+     * Recalculates the permissions on the given server and world of the given group, of all groups inheriting it and
+     * of all loaded users in one of these groups.
+     *
+     * @param group the changed group
+     * @param server the server the group changed on; null for all servers
+     * @param world the world the group changed in; null for all worlds
+     */
+    public void recalcGroupPerms(Group group, String server, String world)
+    {
+        if (group == null)
+        {
+            return;
+        }
+
+        Set<Group> dependents = getInheritanceGraph().getDependents(group);
+        for (Group g : dependents)
+        {
+            if (server == null)
+            {
+                g.recalcPerms();
+            }
+            else if (world == null)
+            {
+                g.recalcPerms(server);
+            }
+            else
+            {
+                g.recalcPerms(server, world);
+            }
+        }
+
+        userlock.readLock().lock();
+        try
+        {
+            for (User u : users.snapshot())
+            {
+                for (Group g : u.getGroups())
+                {
+                    if (!dependents.contains(g))
+                    {
+                        continue;
+                    }
+
+                    if (server == null)
+                    {
+                        u.recalcPerms();
+                    }
+                    else if (world == null)
+                    {
+                        u.recalcPerms(server);
+                    }
+                    else
+                    {
+                        u.recalcPerms(server, world);
+                    }
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            userlock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the groups the given group inherits in the order their permissions are merged. Inheritances of unknown
+     * groups and inheritances closing a loop are left out.
+     *
+     * @param group the group
+     * @return the inherited groups
+     */
+    public List<Group> getInheritedGroups(Group group)
+    {
+        List<Group> l = getInheritanceGraph().getInheritances(group);
+        if (l != null)
+        {
+            return l;
+        }
+
+        //not a loaded group
+        List<Group> ret = new ArrayList<>();
+        for (String name : group.getInheritances())
+        {
+            Group g = getGroup(name);
+            if (g != null)
+            {
+                ret.add(g);
+            }
+        }
+        return ret;
+    }
+
+    private InheritanceGraph getInheritanceGraph()
+    {
+        InheritanceGraph graph = inheritanceGraph;
+        if (graph != null)
+        {
+            return graph;
+        }
+
+        //built under the read lock; invalidations hold the write lock, so a stale graph is never stored
+        grouplock.readLock().lock();
+        try
+        {
+            graph = new InheritanceGraph(groups);
+            inheritanceGraph = graph;
+        }
+        finally
+        {
+            grouplock.readLock().unlock();
+        }
+
+        for (String[] loop : graph.getLoops())
+        {
+            BungeePerms.getLogger().warning(Lang.translate(MessageType.INHERITANCE_LOOP, (Object[]) loop));
+        }
+
+        return graph;
+    }
+
+    private void invalidateInheritanceGraph()
+    {
+        grouplock.writeLock().lock();
+        try
+        {
+            inheritanceGraph = null;
         }
         finally
         {
             grouplock.writeLock().unlock();
         }
     }
+
+    //prefixes and suffixes are not inherited, so only the direct members are affected
+    private void flushDisplayCaches(Group group)
+    {
+        for (User u : users.snapshot())
+        {
+            for (Group g : u.getGroups())
+            {
+                if (g == group)
+                {
+                    u.flushDisplayCache();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void reindexGroups()
+    {
+        //replace the entries instead of clearing the index so lookups never miss an existing group
+        Set<String> names = new HashSet<>();
+        for (Group g : groups)
+        {
+            String name = Statics.toLower(g.getName());
+            names.add(name);
+            groupsByName.put(name, g);
+        }
+        groupsByName.keySet().retainAll(names);
+    }
 }
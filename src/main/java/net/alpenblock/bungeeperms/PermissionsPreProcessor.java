@@ -3,6 +3,12 @@ package net.alpenblock.bungeeperms;
 import java.util.List;
 import net.alpenblock.bungeeperms.platform.Sender;
 
+/**
+ * Alters the permissions of a user before a permission check.
+ * <p>
+ * The given lists are unmodifiable; a processor returns a new list or the given list if it has nothing to change.
+ * Pre processors run on every check unless they are {@link CacheablePreProcessor}s.
+ */
 public interface PermissionsPreProcessor
 {
 
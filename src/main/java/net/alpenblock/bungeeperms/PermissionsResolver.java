@@ -1,7 +1,9 @@
 package net.alpenblock.bungeeperms;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
 import lombok.Getter;
 import lombok.Setter;
 import net.alpenblock.bungeeperms.platform.Sender;
@@ -9,8 +11,9 @@ import net.alpenblock.bungeeperms.platform.Sender;
 public class PermissionsResolver
 {
 
-    public final List<PermissionsPreProcessor> preprocessors = new ArrayList<>();
-    public final List<PermissionsPostProcessor> postprocessors = new ArrayList<>();
+    //copy on write; processors can be registered while checks run
+    public final List<PermissionsPreProcessor> preprocessors = new CopyOnWriteArrayList<>();
+    public final List<PermissionsPostProcessor> postprocessors = new CopyOnWriteArrayList<>();
 
     public void registerProcessor(PermissionsPreProcessor processor)
     {
@@ -32,21 +35,72 @@ public class PermissionsResolver
         postprocessors.remove(processor);
     }
 
+    /**
+     * Runs all pre processors.
+     *
+     * @param perms the permissions; they are not changed
+     * @param s the sender the permissions are checked for
+     * @return the processed permissions
+     */
     public List<String> preprocess(List<String> perms, Sender s)
     {
         for (PermissionsPreProcessor p : preprocessors)
         {
-            perms = p.process(perms, s);
+            perms = p.process(Collections.unmodifiableList(perms), s);
         }
 
-        return perms;
+        return Collections.unmodifiableList(perms);
+    }
+
+    /**
+     * Runs the cacheable pre processors which are registered before the first pre processor that has to run on each
+     * check. The result can be cached if {@link #isCacheable(Sender)}.
+     *
+     * @param perms the permissions; they are not changed
+     * @param s the sender the permissions are checked for
+     * @return the processed permissions
+     */
+    public List<String> preprocessCacheable(List<String> perms, Sender s)
+    {
+        for (PermissionsPreProcessor p : preprocessors)
+        {
+            if (!(p instanceof CacheablePreProcessor))
+            {
+                break;
+            }
+            perms = p.process(Collections.unmodifiableList(perms), s);
+        }
+
+        return Collections.unmodifiableList(perms);
+    }
+
+    /**
+     * Runs the pre processors which are not run by {@link #preprocessCacheable(List, Sender)}.
+     *
+     * @param perms the permissions returned by preprocessCacheable; they are not changed
+     * @param s the sender the permissions are checked for
+     * @return the processed permissions
+     */
+    public List<String> preprocessPerCheck(List<String> perms, Sender s)
+    {
+        boolean cacheable = true;
+        for (PermissionsPreProcessor p : preprocessors)
+        {
+            cacheable = cacheable && p instanceof CacheablePreProcessor;
+            if (!cacheable)
+            {
+                perms = p.process(Collections.unmodifiableList(perms), s);
+            }
+        }
+
+        return Collections.unmodifiableList(perms);
     }
 
     public List<BPPermission> preprocessWithOrigin(List<BPPermission> perms, Sender s)
     {
         for (PermissionsPreProcessor p : preprocessors)
         {
-            perms = p.processWithOrigin(perms, s);
+            perms = p.processWithOrigin(Collections.unmodifiableList(perms), s);
         }
 
         return perms;
@@ -62,10 +116,51 @@ public class PermissionsResolver
         return result;
     }
 
+    /**
+     * Checks if the results of the cacheable pre processors can be cached. The pre processors need the sender to
+     * find the user.
+     *
+     * @param s the sender the permissions are checked for
+     * @return true if the results can be cached
+     */
+    public boolean isCacheable(Sender s)
+    {
+        return s != null || preprocessors.isEmpty();
+    }
+
     @Getter
     @Setter
     private boolean useRegex = false;
 
+    /**
+     * Checks if permission checks can be resolved with permissions compiled from the pre processed effective
+     * permissions. This is the case if all pre processors are cacheable.
+     *
+     * @return true if compiled permissions can be used
+     */
+    public boolean isCompilable()
+    {
+        for (PermissionsPreProcessor p : preprocessors)
+        {
+            if (!(p instanceof CacheablePreProcessor))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiles the given permissions for the current permission mode.
+     *
+     * @param perms the permissions to compile
+     * @return the compiled permissions
+     */
+    public CompiledPermissions compile(List<String> perms)
+    {
+        return useRegex ? new RegexPermissions(perms) : new PermissionsTrie(perms);
+    }
+
     public Boolean has(List<String> perms, String perm)
     {
         if (useRegex)
@@ -133,24 +228,10 @@ public class PermissionsResolver
 
         for (String p : perms)
         {
-            String tocheck = p;
-            boolean negate = false;
-            if (p.startsWith("-"))
-            {
-                negate = true;
-                tocheck = p.substring(1);
-            }
-
-            tocheck = tocheck
-                    .replaceAll("\\.", "\\\\.")
-                    .replaceAll("\\*", "\\.\\*")
-                    .replaceAll("#", "\\.");
-
-            boolean matches = perm.matches(tocheck);
-
-            if (matches)
+            Pattern pattern = RegexPermissions.compile(p);
+            if (pattern != null && pattern.matcher(perm).matches())
             {
-                has = !negate;
+                has = !p.startsWith("-");
             }
         }
 
@@ -0,0 +1,309 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.List;
+
+/**
+ * Immutable, compiled form of a permission list for the normal (non regex) permission mode.
+ * <p>
+ * The permissions are split at the dots and stored in a tree of nodes. A lookup walks down the tree along the
+ * requested permission, so it only costs the depth of the requested permission and does not allocate anything.
+ * <p>
+ * The result of {@link #has(String)} is always the same as {@link PermissionsResolver#hasNormal(List, String)} for
+ * the list the trie was compiled from: the last matching entry wins and negated entries deny.
+ */
+public class PermissionsTrie implements CompiledPermissions
+{
+
+    private final Node root;
+    private final int size;
+
+    public PermissionsTrie(List<String> perms)
+    {
+        root = new Node();
+        size = perms.size();
+
+        int index = 0;
+        for (String p : perms)
+        {
+            insert(Statics.toLower(p), index++);
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public Boolean has(String perm)
+    {
+        int len = perm.length();
+        //like Statics.toList a trailing dot does not start a new node for wildcard matching
+        int wlen = len > 0 && perm.charAt(len - 1) == '.' ? len - 1 : len;
+
+        int best = -1;
+        boolean result = false;
+
+        Node node = root;
+        Node last = null;
+        int start = 0;
+        boolean exhausted = len == 0;
+        while (true)
+        {
+            if (exhausted)
+            {
+                //all nodes of perm are matched; a following * matches
+                if (node.starIndex > best)
+                {
+                    best = node.starIndex;
+                    result = node.starValue;
+                }
+                if (node.negStarIndex > best)
+                {
+                    best = node.negStarIndex;
+                    result = false;
+                }
+                last = node;
+                break;
+            }
+
+            int end = perm.indexOf('.', start);
+            if (end < 0 || end > wlen)
+            {
+                end = wlen;
+            }
+            int seglen = end - start;
+            boolean starseg = seglen == 1 && perm.charAt(start) == '*';
+
+            //a * entry matches if the walk stops here
+            if (!starseg && node.starIndex > best)
+            {
+                best = node.starIndex;
+                result = node.starValue;
+            }
+            if (!starseg && node.negStarIndex > best && !(seglen == 2 && perm.startsWith("-*", start)))
+            {
+                best = node.negStarIndex;
+                result = false;
+            }
+
+            node = node.get(perm, start, end);
+            if (node == null)
+            {
+                break;
+            }
+            if (end >= wlen)
+            {
+                exhausted = true;
+            }
+            else
+            {
+                start = end + 1;
+            }
+        }
+
+        //exact matches
+        Node exact = len > 0 && len == wlen ? last : find(perm);
+        if (exact != null && exact.exactIndex > best)
+        {
+            best = exact.exactIndex;
+            result = exact.exactValue;
+        }
+
+        return best < 0 ? null : result;
+    }
+
+    private Node find(String perm)
+    {
+        Node node = root;
+        int start = 0;
+        while (node != null)
+        {
+            int end = perm.indexOf('.', start);
+            if (end < 0)
+            {
+                return node.get(perm, start, perm.length());
+            }
+            node = node.get(perm, start, end);
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private void insert(String p, int index)
+    {
+        boolean negated = p.startsWith("-");
+
+        //exact matches
+        path(p).setExact(index, true);
+        if (negated)
+        {
+            path(p.substring(1)).setExact(index, false);
+        }
+
+        //wildcards
+        if (p.endsWith("*"))
+        {
+            insertWildcard(p, index, !negated, false);
+            if (negated)
+            {
+                //the first node of a negated permission also matches the non negated node
+                insertWildcard(p.substring(1), index, false, true);
+            }
+        }
+    }
+
+    private void insertWildcard(String p, int index, boolean value, boolean stripped)
+    {
+        List<String> lp = Statics.toList(p, ".");
+        Node node = root;
+        for (int i = 0; i < lp.size(); i++)
+        {
+            String seg = lp.get(i);
+            if (!(stripped && i == 0))
+            {
+                if (seg.equals("*"))
+                {
+                    node.setStar(index, value);
+                }
+                else if (i == 0 && seg.equals("-*"))
+                {
+                    node.setNegStar(index);
+                }
+            }
+            node = node.getOrCreate(seg);
+        }
+    }
+
+    private Node path(String p)
+    {
+        Node node = root;
+        int start = 0;
+        while (true)
+        {
+            int end = p.indexOf('.', start);
+            if (end < 0)
+            {
+                return node.getOrCreate(p.substring(start));
+            }
+            node = node.getOrCreate(p.substring(start, end));
+            start = end + 1;
+        }
+    }
+
+    private static int hash(String s, int start, int end)
+    {
+        int h = 0;
+        for (int i = start; i < end; i++)
+        {
+            h = 31 * h + Character.toLowerCase(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static class Node
+    {
+
+        //children in an open addressing table; keys are lower case
+        private String[] keys;
+        private Node[] children;
+        private int count;
+
+        private int exactIndex = -1;
+        private boolean exactValue;
+        private int starIndex = -1;
+        private boolean starValue;
+        private int negStarIndex = -1;
+
+        private Node get(String s, int start, int end)
+        {
+            if (keys == null)
+            {
+                return null;
+            }
+            int len = end - start;
+            int mask = keys.length - 1;
+            int i = hash(s, start, end) & mask;
+            while (keys[i] != null)
+            {
+                String key = keys[i];
+                if (key.length() == len && key.regionMatches(true, 0, s, start, len))
+                {
+                    return children[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        private Node getOrCreate(String key)
+        {
+            Node n = get(key, 0, key.length());
+            if (n != null)
+            {
+                return n;
+            }
+
+            if (keys == null)
+            {
+                keys = new String[4];
+                children = new Node[4];
+            }
+            else if ((count + 1) * 2 > keys.length)
+            {
+                resize();
+            }
+
+            n = new Node();
+            put(key, n);
+            return n;
+        }
+
+        private void put(String key, Node n)
+        {
+            int mask = keys.length - 1;
+            int i = hash(key, 0, key.length()) & mask;
+            while (keys[i] != null)
+            {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            children[i] = n;
+            count++;
+        }
+
+        private void resize()
+        {
+            String[] oldkeys = keys;
+            Node[] oldchildren = children;
+            keys = new String[oldkeys.length * 2];
+            children = new Node[oldkeys.length * 2];
+            count = 0;
+            for (int i = 0; i < oldkeys.length; i++)
+            {
+                if (oldkeys[i] != null)
+                {
+                    put(oldkeys[i], oldchildren[i]);
+                }
+            }
+        }
+
+        private void setExact(int index, boolean value)
+        {
+            exactIndex = index;
+            exactValue = value;
+        }
+
+        private void setStar(int index, boolean value)
+        {
+            starIndex = index;
+            starValue = value;
+        }
+
+        private void setNegStar(int index)
+        {
+            negStarIndex = index;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable, compiled form of a permission list for the regex permission mode.
+ * <p>
+ * Every entry is translated and compiled into a {@link Pattern} once. A check tests the patterns from the last entry
+ * to the first one and stops at the first match, so it gives the same result as
+ * {@link PermissionsResolver#hasRegex(List, String)} without recompiling anything.
+ */
+public class RegexPermissions implements CompiledPermissions
+{
+
+    private static final int MAX_CACHED_PATTERNS = 10000;
+    private static final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    private final Pattern[] compiled;
+    private final boolean[] negated;
+
+    public RegexPermissions(List<String> perms)
+    {
+        compiled = new Pattern[perms.size()];
+        negated = new boolean[perms.size()];
+
+        int index = 0;
+        for (String p : perms)
+        {
+            negated[index] = p.startsWith("-");
+            compiled[index] = compile(p);
+            index++;
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return compiled.length;
+    }
+
+    @Override
+    public Boolean has(String perm)
+    {
+        for (int i = compiled.length - 1; i >= 0; i--)
+        {
+            if (compiled[i] != null && compiled[i].matcher(perm).matches())
+            {
+                return !negated[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the compiled pattern of a permission entry in regex mode. Patterns are shared and cached by their entry.
+     *
+     * @param p the permission entry; may be negated
+     * @return the compiled pattern or null if the entry is no valid regex
+     */
+    public static Pattern compile(String p)
+    {
+        Pattern pattern = patterns.get(p);
+        if (pattern != null)
+        {
+            return pattern;
+        }
+
+        String tocheck = p.startsWith("-") ? p.substring(1) : p;
+        tocheck = tocheck
+                .replaceAll("\\.", "\\\\.")
+                .replaceAll("\\*", "\\.\\*")
+                .replaceAll("#", "\\.");
+
+        try
+        {
+            pattern = Pattern.compile(tocheck);
+        }
+        catch (PatternSyntaxException e)
+        {
+            BungeePerms.getInstance().getDebug().log(e);
+            return null;
+        }
+
+        //the entries come from the permissions config so this only grows if the perms change a lot
+        if (patterns.size() >= MAX_CACHED_PATTERNS)
+        {
+            patterns.clear();
+        }
+        patterns.put(p, pattern);
+
+        return pattern;
+    }
+}
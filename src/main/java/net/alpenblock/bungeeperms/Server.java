@@ -3,7 +3,6 @@ package net.alpenblock.bungeeperms;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
@@ -12,7 +11,6 @@ import lombok.ToString;
 @Getter
 @Setter
 @ToString
-@AllArgsConstructor
 @EqualsAndHashCode
 public class Server implements Permable
 {
@@ -24,6 +22,22 @@ public class Server implements Permable
     private String prefix;
     private String suffix;
 
+    public Server(String server, List<String> perms, Map<String, World> worlds, String display, String prefix, String suffix)
+    {
+        this.server = server;
+        this.perms = new PermissionList(perms);
+        this.worlds = worlds;
+        this.display = display;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    @Override
+    public void setPerms(List<String> perms)
+    {
+        this.perms = new PermissionList(perms);
+    }
+
     public World getWorld(String name)
     {
         if(name == null)
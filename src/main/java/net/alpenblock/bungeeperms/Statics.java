@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.SneakyThrows;
 import net.alpenblock.bungeeperms.platform.Sender;
 import org.bukkit.event.Event;
@@ -86,12 +87,46 @@ public class Statics
         return false;
     }
 
+    //class -> field name -> accessible field
+    private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Field>> fields = new ConcurrentHashMap<>();
+
+    /**
+     * Gets a declared field of a class and makes it accessible. The lookup is done once per class and field, later
+     * calls return the cached field.
+     *
+     * @param clazz the class which declares the field
+     * @param varname the name of the field
+     * @return the accessible field
+     * @throws NoSuchFieldException if the class does not declare the field
+     */
+    public static Field getDeclaredField(Class<?> clazz, String varname) throws NoSuchFieldException
+    {
+        ConcurrentHashMap<String, Field> classfields = fields.get(clazz);
+        if (classfields == null)
+        {
+            classfields = new ConcurrentHashMap<>();
+            ConcurrentHashMap<String, Field> old = fields.putIfAbsent(clazz, classfields);
+            if (old != null)
+            {
+                classfields = old;
+            }
+        }
+
+        Field f = classfields.get(varname);
+        if (f == null)
+        {
+            f = clazz.getDeclaredField(varname);
+            f.setAccessible(true);
+            classfields.put(varname, f);
+        }
+        return f;
+    }
+
     public static <T> T replaceField(Object instance, T var, String varname)
     {
         try
         {
-            Field f = instance.getClass().getDeclaredField(varname);
-            f.setAccessible(true);
+            Field f = getDeclaredField(instance.getClass(), varname);
             T old = (T) f.get(instance);
             f.set(instance, var);
             return old;
@@ -106,8 +141,7 @@ public class Statics
     {
         try
         {
-            Field f = instance.getClass().getDeclaredField(varname);
-            f.setAccessible(true);
+            Field f = getDeclaredField(instance.getClass(), varname);
             T old = (T) f.get(instance);
             return old;
         }
@@ -121,8 +155,7 @@ public class Statics
     {
         try
         {
-            Field f = clazz.getDeclaredField(varname);
-            f.setAccessible(true);
+            Field f = getDeclaredField(clazz, varname);
             T old = (T) f.get(instance);
             return old;
         }
@@ -141,8 +174,7 @@ public class Statics
     {
         try
         {
-            Field f = clazz.getDeclaredField(varname);
-            f.setAccessible(true);
+            Field f = getDeclaredField(clazz, varname);
             f.set(instance, var);
         }
         catch (Exception ex)
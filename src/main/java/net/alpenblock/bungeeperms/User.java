@@ -2,9 +2,11 @@ package net.alpenblock.bungeeperms;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -21,10 +23,25 @@ public class User implements PermEntity
 
     @Getter(value = AccessLevel.PRIVATE)
     @Setter(value = AccessLevel.PRIVATE)
-    private Map<String, List<String>> cachedPerms;
+    //filled lazily by the permission checks, so they are shared between threads
+    private ConcurrentHashMap<Context, List<String>> cachedPerms;
     @Getter(value = AccessLevel.PRIVATE)
     @Setter(value = AccessLevel.PRIVATE)
-    private Map<String, Map<String, Map<String, Boolean>>> permCheckResults;
+    private ConcurrentHashMap<Context, CompiledPermissions> compiledPerms;
+    @Getter(value = AccessLevel.PRIVATE)
+    @Setter(value = AccessLevel.PRIVATE)
+    private ConcurrentHashMap<Context, List<String>> processedPerms;
+    //bumped by every recalculation; a result calculated meanwhile is not cached
+    private transient volatile int generation;
+    @Getter(value = AccessLevel.PRIVATE)
+    @Setter(value = AccessLevel.PRIVATE)
+    private volatile ConcurrentHashMap<Context, String> cachedPrefixes;
+    @Getter(value = AccessLevel.PRIVATE)
+    @Setter(value = AccessLevel.PRIVATE)
+    private volatile ConcurrentHashMap<Context, String> cachedSuffixes;
+    @Getter(value = AccessLevel.PRIVATE)
+    @Setter(value = AccessLevel.PRIVATE)
+    private PermissionCheckCache permCheckResults;
 
     private String name;
     private UUID UUID;
@@ -36,17 +53,24 @@ public class User implements PermEntity
     private String prefix;
     private String suffix;
 
-    private long lastAccess;
+    //written by the permission checks and the prewarming threads
+    private volatile long lastAccess;
+    //stands in for a user whose load failed or timed out; never saved
+    private transient volatile boolean placeholder;
 
     public User(String name, UUID UUID, List<Group> groups, List<String> extraPerms, Map<String, Server> servers, String display, String prefix, String suffix)
     {
-        cachedPerms = new HashMap<>();
-        permCheckResults = new HashMap<>();
+        cachedPerms = new ConcurrentHashMap<>();
+        compiledPerms = new ConcurrentHashMap<>();
+        processedPerms = new ConcurrentHashMap<>();
+        cachedPrefixes = new ConcurrentHashMap<>();
+        cachedSuffixes = new ConcurrentHashMap<>();
+        permCheckResults = new PermissionCheckCache(BungeePerms.getInstance().getConfig().getPermCheckCacheSize());
 
         this.name = name;
         this.UUID = UUID;
         this.groups = groups;
-        this.perms = extraPerms;
+        this.perms = new PermissionList(extraPerms);
         this.servers = servers;
 
         this.display = display;
@@ -105,9 +129,10 @@ public class User implements PermEntity
         access();
 
         perm = Statics.toLower(perm);
+        Context ctx = Context.GLOBAL;
 
         //check cached perms
-        Boolean cached = getCachedResult(perm, null, null);
+        Boolean cached = getCachedResult(perm, ctx);
         if (cached != null)
         {
             //debug mode
@@ -115,23 +140,19 @@ public class User implements PermEntity
             return cached;
         }
 
-        //check perms
-        List<String> perms = getEffectivePerms();
-
-        //pre process
-        perms = BungeePerms.getInstance().getPermissionsResolver().preprocess(perms, s);
-
-        //resolve
-        Boolean has = BungeePerms.getInstance().getPermissionsResolver().has(perms, perm);
+        //check perms; a result of permissions which change meanwhile is not cached
+        int epoch = permCheckResults.getEpoch();
+        PermissionsResolver resolver = BungeePerms.getInstance().getPermissionsResolver();
+        Boolean has = resolve(resolver, s, perm, ctx);
 
         //post process
-        has = BungeePerms.getInstance().getPermissionsResolver().postprocess(perm, has, s);
+        has = resolver.postprocess(perm, has, s);
 
         //only true if really true
         has = has != null && has;
 
         //cache
-        setCachedResult(perm, has, null, null);
+        setCachedResult(perm, has, ctx, epoch);
 
         //debug mode
         debug(perm, has);
@@ -144,10 +165,10 @@ public class User implements PermEntity
         access();
 
         perm = Statics.toLower(perm);
-        server = Statics.toLower(server);
+        Context ctx = Context.of(server);
 
         //check cached perms
-        Boolean cached = getCachedResult(perm, server, null);
+        Boolean cached = getCachedResult(perm, ctx);
         if (cached != null)
         {
             //debug mode
@@ -155,23 +176,19 @@ public class User implements PermEntity
             return cached;
         }
 
-        //check perms
-        List<String> perms = getEffectivePerms(server);
-
-        //pre process
-        perms = BungeePerms.getInstance().getPermissionsResolver().preprocess(perms, s);
-
-        //resolve
-        Boolean has = BungeePerms.getInstance().getPermissionsResolver().has(perms, perm);
+        //check perms; a result of permissions which change meanwhile is not cached
+        int epoch = permCheckResults.getEpoch();
+        PermissionsResolver resolver = BungeePerms.getInstance().getPermissionsResolver();
+        Boolean has = resolve(resolver, s, perm, ctx);
 
         //post process
-        has = BungeePerms.getInstance().getPermissionsResolver().postprocess(perm, has, s);
+        has = resolver.postprocess(perm, has, s);
 
         //only true if really true
         has = has != null && has;
 
         //cache
-        setCachedResult(perm, has, server, null);
+        setCachedResult(perm, has, ctx, epoch);
 
         //debug mode
         debug(perm, has);
@@ -184,11 +201,10 @@ public class User implements PermEntity
         access();
 
         perm = Statics.toLower(perm);
-        server = Statics.toLower(server);
-        world = Statics.toLower(world);
+        Context ctx = Context.of(server, world);
 
         //check cached perms
-        Boolean cached = getCachedResult(perm, server, world);
+        Boolean cached = getCachedResult(perm, ctx);
         if (cached != null)
         {
             //debug mode
@@ -196,23 +212,19 @@ public class User implements PermEntity
             return cached;
         }
 
-        //check perms
-        List<String> perms = getEffectivePerms(server, world);
-
-        //pre process
-        perms = BungeePerms.getInstance().getPermissionsResolver().preprocess(perms, s);
-
-        //resolve
-        Boolean has = BungeePerms.getInstance().getPermissionsResolver().has(perms, perm);
+        //check perms; a result of permissions which change meanwhile is not cached
+        int epoch = permCheckResults.getEpoch();
+        PermissionsResolver resolver = BungeePerms.getInstance().getPermissionsResolver();
+        Boolean has = resolve(resolver, s, perm, ctx);
 
         //post process
-        has = BungeePerms.getInstance().getPermissionsResolver().postprocess(perm, has, s);
+        has = resolver.postprocess(perm, has, s);
 
         //only true if really true
         has = has != null && has;
 
         //cache
-        setCachedResult(perm, has, server, world);
+        setCachedResult(perm, has, ctx, epoch);
 
         //debug mode
         debug(perm, has);
@@ -220,61 +232,137 @@ public class User implements PermEntity
         return has;
     }
 
-    public List<String> getEffectivePerms()
+    //resolves a perm in the given context
+    private Boolean resolve(PermissionsResolver resolver, Sender s, String perm, Context ctx)
     {
-        access();
-
-        List<String> effperms = cachedPerms.get("global");
-        if (effperms == null)
+        if (resolver.isCompilable() && resolver.isCacheable(s))
         {
-            effperms = calcEffectivePerms();
-            cachedPerms.put("global", effperms);
+            //resolve with compiled perms
+            return getCompiledPerms(s, ctx).has(perm);
         }
 
-        return new ArrayList<>(effperms);
+        //pre process; the part of the cacheable pre processors is cached
+        List<String> perms = resolver.preprocessPerCheck(getProcessedPerms(s, ctx), s);
+
+        //resolve
+        return resolver.has(perms, perm);
+    }
+
+    public List<String> getEffectivePerms()
+    {
+        access();
+
+        return getEffectivePerms(Context.GLOBAL);
     }
 
     public List<String> getEffectivePerms(String server)
     {
         access();
 
-        if (server == null)
-        {
-            return getEffectivePerms();
-        }
+        return getEffectivePerms(Context.of(server));
+    }
 
-        server = Statics.toLower(server);
+    public List<String> getEffectivePerms(String server, String world)
+    {
+        access();
 
-        List<String> effperms = cachedPerms.get(Statics.toLower(server));
+        return getEffectivePerms(Context.of(server, world));
+    }
+
+    private List<String> getEffectivePerms(Context ctx)
+    {
+        List<String> effperms = cachedPerms.get(ctx);
         if (effperms == null)
         {
-            effperms = calcEffectivePerms(server);
-            cachedPerms.put(server, effperms);
+            int gen = generation;
+            if (ctx.getServer() == null)
+            {
+                effperms = calcEffectivePerms();
+            }
+            else if (ctx.getWorld() == null)
+            {
+                effperms = calcEffectivePerms(ctx.getServer());
+            }
+            else
+            {
+                effperms = calcEffectivePerms(ctx.getServer(), ctx.getWorld());
+            }
+            //users with the same groups share the list
+            effperms = PermissionList.shared(effperms);
+            if (gen == generation)
+            {
+                cachedPerms.put(ctx, effperms);
+            }
         }
 
-        return new ArrayList<>(effperms);
+        return effperms;
     }
 
-    public List<String> getEffectivePerms(String server, String world)
+    public CompiledPermissions getCompiledPerms()
     {
         access();
 
-        if (world == null)
+        return getCompiledPerms(getSender(), Context.GLOBAL);
+    }
+
+    public CompiledPermissions getCompiledPerms(String server)
+    {
+        access();
+
+        return getCompiledPerms(getSender(), Context.of(server));
+    }
+
+    public CompiledPermissions getCompiledPerms(String server, String world)
+    {
+        access();
+
+        return getCompiledPerms(getSender(), Context.of(server, world));
+    }
+
+    //compiles the perms after the cacheable pre processors
+    private CompiledPermissions getCompiledPerms(Sender s, Context ctx)
+    {
+        PermissionsResolver resolver = BungeePerms.getInstance().getPermissionsResolver();
+        if (!resolver.isCacheable(s))
         {
-            return getEffectivePerms(server);
+            return resolver.compile(getProcessedPerms(s, ctx));
         }
 
-        server = Statics.toLower(server);
-        world = Statics.toLower(world);
+        CompiledPermissions compiled = compiledPerms.get(ctx);
+        if (compiled == null)
+        {
+            int gen = generation;
+            compiled = resolver.compile(getProcessedPerms(s, ctx));
+            if (gen == generation)
+            {
+                compiledPerms.put(ctx, compiled);
+            }
+        }
 
-        List<String> effperms = cachedPerms.get(server + ";" + world);
-        if (effperms == null)
+        return compiled;
+    }
+
+    //the effective perms after the cacheable pre processors
+    private List<String> getProcessedPerms(Sender s, Context ctx)
+    {
+        PermissionsResolver resolver = BungeePerms.getInstance().getPermissionsResolver();
+        if (!resolver.isCacheable(s))
         {
-            effperms = calcEffectivePerms(server, world);
-            cachedPerms.put(server + ";" + world, effperms);
+            return resolver.preprocessCacheable(getEffectivePerms(ctx), s);
         }
 
-        return new ArrayList<>(effperms);
+        List<String> processed = processedPerms.get(ctx);
+        if (processed == null)
+        {
+            int gen = generation;
+            processed = resolver.preprocessCacheable(getEffectivePerms(ctx), s);
+            if (gen == generation)
+            {
+                processedPerms.put(ctx, processed);
+            }
+        }
+
+        return processed;
     }
 
     public List<String> calcEffectivePerms()
@@ -376,35 +464,18 @@ public class User implements PermEntity
         BungeePerms.getInstance().getEventDispatcher().dispatchUserChangeEvent(this);
     }
 
+    //the effective perms are only dropped here and recalculated lazily on the next access
     private void recalcPerms0()
     {
         access();
 
-        for (Map.Entry<String, List<String>> e : cachedPerms.entrySet())
-        {
-            String where = e.getKey();
-            List<String> l = Statics.toList(where, ";");
-            String server = l.get(0);
+        generation++;
+        cachedPerms.clear();
+        processedPerms.clear();
+        compiledPerms.clear();
 
-            if (l.size() == 1)
-            {
-                if (server.equalsIgnoreCase("global"))
-                {
-                    cachedPerms.put("global", calcEffectivePerms());
-                }
-                else
-                {
-                    List<String> effperms = calcEffectivePerms(server);
-                    cachedPerms.put(Statics.toLower(server), effperms);
-                }
-            }
-            else if (l.size() == 2)
-            {
-                String world = l.get(1);
-
-                recalcPerms0(server, world);
-            }
-        }
+        //the groups might have changed
+        flushDisplayCache();
 
         permCheckResults.clear();
     }
@@ -413,28 +484,12 @@ public class User implements PermEntity
     {
         access();
 
-        server = Statics.toLower(server);
-
-        for (Map.Entry<String, List<String>> e : cachedPerms.entrySet())
-        {
-            String where = e.getKey();
-            List<String> l = Statics.toList(where, ";");
-            String lserver = Statics.toLower(l.get(0));
+        Context ctx = Context.of(server);
 
-            if (lserver.equalsIgnoreCase(server))
-            {
-                if (l.size() == 1)
-                {
-                    List<String> effperms = calcEffectivePerms(lserver);
-                    cachedPerms.put(lserver, effperms);
-                }
-                else if (l.size() == 2)
-                {
-                    String world = Statics.toLower(l.get(1));
-                    recalcPerms0(lserver, world);
-                }
-            }
-        }
+        generation++;
+        removeServerEntries(cachedPerms, ctx);
+        removeServerEntries(processedPerms, ctx);
+        removeServerEntries(compiledPerms, ctx);
 
         //todo maybe only server perms cache flush
         permCheckResults.clear();
@@ -444,16 +499,29 @@ public class User implements PermEntity
     {
         access();
 
-        server = Statics.toLower(server);
-        world = Statics.toLower(world);
+        Context ctx = Context.of(server, world);
 
-        List<String> effperms = calcEffectivePerms(server, world);
-        cachedPerms.put(server + ";" + world, effperms);
+        generation++;
+        cachedPerms.remove(ctx);
+        processedPerms.remove(ctx);
+        compiledPerms.remove(ctx);
 
         //todo maybe only serverworld perms cache flush
         permCheckResults.clear();
     }
 
+    private static void removeServerEntries(Map<Context, ?> map, Context server)
+    {
+        Iterator<Context> it = map.keySet().iterator();
+        while (it.hasNext())
+        {
+            if (it.next().isIn(server))
+            {
+                it.remove();
+            }
+        }
+    }
+
     public boolean isNothingSpecial()
     {
         access();
@@ -623,10 +691,33 @@ public class User implements PermEntity
         return buildPrefix(sender != null ? sender.getServer() : null, sender != null ? sender.getWorld() : null);
     }
 
+    /**
+     * Gets the prefix of the user in the given context. The prefix is composed once per context and cached until
+     * {@link #flushDisplayCache()} is called.
+     *
+     * @param server the server or null
+     * @param world the world or null
+     * @return the prefix
+     */
     public String buildPrefix(String server, String world)
     {
         access();
 
+        Context ctx = Context.of(server, world);
+
+        //a flush replaces the map, so a prefix composed during a flush doesn't stay
+        ConcurrentHashMap<Context, String> cache = cachedPrefixes;
+        String prefix = cache.get(ctx);
+        if (prefix == null)
+        {
+            prefix = calcPrefix(ctx.getServer(), ctx.getWorld());
+            cache.put(ctx, prefix);
+        }
+        return prefix;
+    }
+
+    private String calcPrefix(String server, String world)
+    {
         String prefix = "";
 
         List<String> prefixes = new ArrayList<>();
@@ -715,10 +806,32 @@ public class User implements PermEntity
         return buildSuffix(sender != null ? sender.getServer() : null, sender != null ? sender.getWorld() : null);
     }
 
+    /**
+     * Gets the suffix of the user in the given context. The suffix is composed once per context and cached until
+     * {@link #flushDisplayCache()} is called.
+     *
+     * @param server the server or null
+     * @param world the world or null
+     * @return the suffix
+     */
     public String buildSuffix(String server, String world)
     {
         access();
 
+        Context ctx = Context.of(server, world);
+
+        ConcurrentHashMap<Context, String> cache = cachedSuffixes;
+        String suffix = cache.get(ctx);
+        if (suffix == null)
+        {
+            suffix = calcSuffix(ctx.getServer(), ctx.getWorld());
+            cache.put(ctx, suffix);
+        }
+        return suffix;
+    }
+
+    private String calcSuffix(String server, String world)
+    {
         String suffix = "";
 
         List<String> suffixes = new ArrayList<>();
@@ -799,6 +912,16 @@ public class User implements PermEntity
         permCheckResults.clear();
     }
 
+    /**
+     * Drops the cached prefixes and suffixes. Has to be called when the prefix or suffix of the user or of one of its
+     * groups changes.
+     */
+    public void flushDisplayCache()
+    {
+        cachedPrefixes = new ConcurrentHashMap<>();
+        cachedSuffixes = new ConcurrentHashMap<>();
+    }
+
     private Sender getSender()
     {
         return BungeePerms.getInstance().getConfig().isUseUUIDs()
@@ -819,35 +942,46 @@ public class User implements PermEntity
         lastAccess = System.currentTimeMillis();
     }
 
-    private Boolean getCachedResult(String permission, String server, String world)
+    private Boolean getCachedResult(String permission, Context ctx)
     {
-        return getPermMap(server, world).get(permission);
+        return permCheckResults.get(permission, ctx);
     }
 
-    private void setCachedResult(String permission, boolean value, String server, String world)
+    private void setCachedResult(String permission, boolean value, Context ctx, int epoch)
     {
-        getPermMap(server, world).put(permission, value);
+        permCheckResults.put(permission, value, ctx, epoch);
     }
 
-    private Map<String, Boolean> getPermMap(String server, String world)
+    /**
+     * Gets the number of permission checks answered from the result cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getPermCheckCacheHits()
     {
-        //get server
-        Map<String, Map<String, Boolean>> worldmap = permCheckResults.get(server);
-        if (worldmap == null)
-        {
-            worldmap = new HashMap();
-            permCheckResults.put(server, worldmap);
-        }
+        return permCheckResults.getHits();
+    }
 
-        //get world
-        Map<String, Boolean> permmap = worldmap.get(world);
-        if (permmap == null)
-        {
-            permmap = new HashMap();
-            worldmap.put(world, permmap);
-        }
+    /**
+     * Gets the number of permission checks which had to be resolved.
+     *
+     * @return the number of cache misses
+     */
+    public long getPermCheckCacheMisses()
+    {
+        return permCheckResults.getMisses();
+    }
+
+    @Override
+    public void setPerms(List<String> perms)
+    {
+        this.perms = new PermissionList(perms);
+    }
 
-        return permmap;
+    //for the heap report
+    List<List<String>> getCachedEffectivePermLists()
+    {
+        return new ArrayList<>(cachedPerms.values());
     }
 
     @Deprecated
@@ -859,6 +993,6 @@ public class User implements PermEntity
     @Deprecated
     public void setExtraPerms(List<String> perms) //todo: remove
     {
-        this.perms = perms;
+        setPerms(perms);
     }
 }
@@ -1,7 +1,6 @@
 package net.alpenblock.bungeeperms;
 
 import java.util.List;
-import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
@@ -10,7 +9,6 @@ import lombok.ToString;
 @Getter
 @Setter
 @ToString
-@AllArgsConstructor
 @EqualsAndHashCode
 public class World implements Permable
 {
@@ -20,4 +18,19 @@ public class World implements Permable
     private String display;
     private String prefix;
     private String suffix;
+
+    public World(String world, List<String> perms, String display, String prefix, String suffix)
+    {
+        this.world = world;
+        this.perms = new PermissionList(perms);
+        this.display = display;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    @Override
+    public void setPerms(List<String> perms)
+    {
+        this.perms = new PermissionList(perms);
+    }
 }
@@ -12,6 +12,11 @@ public interface BackEnd
 
     public void load();
 
+    /**
+     * Writes all buffered changes.
+     */
+    public void flush();
+
     public List<Group> loadGroups();
 
     public List<User> loadUsers();
@@ -47,7 +47,7 @@ public class MySQL2BackEnd implements BackEnd
         table = config.getTablePrefix() + "permissions2";
 
         adapter = new MysqlPermsAdapter2(mysql, table);
-        adapter.createTable();
+        adapter.createTable(new MysqlSchema(mysql, config.getTablePrefix() + "schema"));
     }
 
     @Override
@@ -61,16 +61,21 @@ public class MySQL2BackEnd implements BackEnd
     {
     }
 
+    @Override
+    public void flush()
+    {
+        //changes are written at once
+    }
+
     @Override
     public List<Group> loadGroups()
     {
         List<Group> ret = new ArrayList<>();
 
-        List<String> groups = adapter.getGroups();
-        for (String g : groups)
+        //one query for all groups
+        for (MysqlPermEntity mpe : adapter.getEntities(EntityType.Group))
         {
-            Group group = loadGroup(g);
-            ret.add(group);
+            ret.add(toGroup(mpe));
         }
         Collections.sort(ret);
 
@@ -82,10 +87,10 @@ public class MySQL2BackEnd implements BackEnd
     {
         List<User> ret = new ArrayList<>();
 
-        List<String> users = adapter.getUsers();
-        for (String u : users)
+        //one query for all users
+        for (MysqlPermEntity mpe : adapter.getEntities(EntityType.User))
         {
-            User user = BungeePerms.getInstance().getConfig().isUseUUIDs() ? loadUser(UUID.fromString(u)) : loadUser(u);
+            User user = BungeePerms.getInstance().getConfig().isUseUUIDs() ? toUser(mpe, UUID.fromString(mpe.getName())) : toUser(mpe);
             ret.add(user);
         }
 
@@ -101,6 +106,11 @@ public class MySQL2BackEnd implements BackEnd
             return null;
         }
 
+        return toGroup(mpe);
+    }
+
+    private Group toGroup(MysqlPermEntity mpe)
+    {
         List<String> inheritances = getValues(mpe.getData("inheritances"));
         boolean isdefault = getFirstValue(mpe.getData("default"), false);
         int rank = getFirstValue(mpe.getData("rank"), 1000);
@@ -122,6 +132,11 @@ public class MySQL2BackEnd implements BackEnd
             return null;
         }
 
+        return toUser(mpe);
+    }
+
+    private User toUser(MysqlPermEntity mpe)
+    {
         //groups
         List<String> sgroups = getValues(mpe.getData("groups"));
         List<Group> lgroups = new ArrayList<>();
@@ -150,6 +165,11 @@ public class MySQL2BackEnd implements BackEnd
             return null;
         }
 
+        return toUser(mpe, user);
+    }
+
+    private User toUser(MysqlPermEntity mpe, UUID user)
+    {
         //groups
         List<String> sgroups = getValues(mpe.getData("groups"));
         List<Group> lgroups = new ArrayList<>();
@@ -202,61 +222,77 @@ public class MySQL2BackEnd implements BackEnd
     }
 
     @Override
-    public synchronized void saveUser(User user, boolean savetodisk)
+    public synchronized void saveUser(final User user, boolean savetodisk)
     {
         if (BungeePerms.getInstance().getConfig().isSaveAllUsers() || !user.isNothingSpecial())
         {
-            saveUserGroups(user);
-            saveUserPerms(user);
-            saveUserDisplay(user, null, null);
-            saveUserPrefix(user, null, null);
-            saveUserSuffix(user, null, null);
-
-            for (Map.Entry<String, Server> se : user.getServers().entrySet())
+            //all or nothing
+            adapter.runTransaction(new Runnable()
             {
-                saveUserPerServerPerms(user, se.getKey());
-                saveUserDisplay(user, se.getKey(), null);
-                saveUserPrefix(user, se.getKey(), null);
-                saveUserSuffix(user, se.getKey(), null);
-
-                for (Map.Entry<String, World> we : se.getValue().getWorlds().entrySet())
+                @Override
+                public void run()
                 {
-                    saveUserPerServerWorldPerms(user, se.getKey(), we.getKey());
-                    saveUserDisplay(user, se.getKey(), we.getKey());
-                    saveUserPrefix(user, se.getKey(), we.getKey());
-                    saveUserSuffix(user, se.getKey(), we.getKey());
+                    saveUserGroups(user);
+                    saveUserPerms(user);
+                    saveUserDisplay(user, null, null);
+                    saveUserPrefix(user, null, null);
+                    saveUserSuffix(user, null, null);
+
+                    for (Map.Entry<String, Server> se : user.getServers().entrySet())
+                    {
+                        saveUserPerServerPerms(user, se.getKey());
+                        saveUserDisplay(user, se.getKey(), null);
+                        saveUserPrefix(user, se.getKey(), null);
+                        saveUserSuffix(user, se.getKey(), null);
+
+                        for (Map.Entry<String, World> we : se.getValue().getWorlds().entrySet())
+                        {
+                            saveUserPerServerWorldPerms(user, se.getKey(), we.getKey());
+                            saveUserDisplay(user, se.getKey(), we.getKey());
+                            saveUserPrefix(user, se.getKey(), we.getKey());
+                            saveUserSuffix(user, se.getKey(), we.getKey());
+                        }
+                    }
                 }
-            }
+            });
         }
     }
 
     @Override
-    public synchronized void saveGroup(Group group, boolean savetodisk)
+    public synchronized void saveGroup(final Group group, boolean savetodisk)
     {
-        saveGroupInheritances(group);
-        saveGroupPerms(group);
-        saveGroupRank(group);
-        saveGroupLadder(group);
-        saveGroupDefault(group);
-        saveGroupDisplay(group, null, null);
-        saveGroupPrefix(group, null, null);
-        saveGroupSuffix(group, null, null);
-
-        for (Map.Entry<String, Server> se : group.getServers().entrySet())
+        //all or nothing
+        adapter.runTransaction(new Runnable()
         {
-            saveGroupPerServerPerms(group, se.getKey());
-            saveGroupDisplay(group, se.getKey(), null);
-            saveGroupPrefix(group, se.getKey(), null);
-            saveGroupSuffix(group, se.getKey(), null);
-
-            for (Map.Entry<String, World> we : se.getValue().getWorlds().entrySet())
+            @Override
+            public void run()
             {
-                saveGroupPerServerWorldPerms(group, se.getKey(), we.getKey());
-                saveGroupDisplay(group, se.getKey(), we.getKey());
-                saveGroupPrefix(group, se.getKey(), we.getKey());
-                saveGroupSuffix(group, se.getKey(), we.getKey());
+                saveGroupInheritances(group);
+                saveGroupPerms(group);
+                saveGroupRank(group);
+                saveGroupLadder(group);
+                saveGroupDefault(group);
+                saveGroupDisplay(group, null, null);
+                saveGroupPrefix(group, null, null);
+                saveGroupSuffix(group, null, null);
+
+                for (Map.Entry<String, Server> se : group.getServers().entrySet())
+                {
+                    saveGroupPerServerPerms(group, se.getKey());
+                    saveGroupDisplay(group, se.getKey(), null);
+                    saveGroupPrefix(group, se.getKey(), null);
+                    saveGroupSuffix(group, se.getKey(), null);
+
+                    for (Map.Entry<String, World> we : se.getValue().getWorlds().entrySet())
+                    {
+                        saveGroupPerServerWorldPerms(group, se.getKey(), we.getKey());
+                        saveGroupDisplay(group, se.getKey(), we.getKey());
+                        saveGroupPrefix(group, se.getKey(), we.getKey());
+                        saveGroupSuffix(group, se.getKey(), we.getKey());
+                    }
+                }
             }
-        }
+        });
     }
 
     @Override
@@ -61,6 +61,12 @@ public class MySQLBackEnd implements BackEnd
         permsconf.load();
     }
 
+    @Override
+    public void flush()
+    {
+        //changes are written at once
+    }
+
     @Override
     public List<Group> loadGroups()
     {
@@ -96,10 +102,12 @@ public class MySQLBackEnd implements BackEnd
     {
         MysqlConfig permsconf = new MysqlConfig(mysql, table);
 
-        ResultSet res = mysql.returnQuery("SELECT `key`,`value` FROM `" + table + "` WHERE `key` LIKE 'groups." + group + "%' ORDER BY id ASC");
+        ResultSet res = mysql.returnQuery("SELECT `key`,`value` FROM `" + table + "` WHERE `key` LIKE ? ORDER BY id ASC", "groups." + group + "%");
 
         permsconf.fromResult(res);
 
+        Mysql.closeResultSet(res);
+
         if (!permsconf.keyExists("groups." + group))
         {
             return null;
@@ -627,7 +635,7 @@ public class MySQLBackEnd implements BackEnd
     {
         MysqlConfig permsconf = new MysqlConfig(mysql, table);
 
-        ResultSet res = mysql.returnQuery("SELECT `key`,`value` FROM `" + table + "` WHERE `key` LIKE 'groups." + group.getName() + "%' ORDER BY id ASC");
+        ResultSet res = mysql.returnQuery("SELECT `key`,`value` FROM `" + table + "` WHERE `key` LIKE ? ORDER BY id ASC", "groups." + group.getName() + "%");
 
         permsconf.fromResult(res);
 
@@ -686,7 +694,7 @@ public class MySQLBackEnd implements BackEnd
     {
         MysqlConfig permsconf = new MysqlConfig(mysql, table);
 
-        ResultSet res = mysql.returnQuery("SELECT `key`,`value` FROM `" + table + "` WHERE `key` LIKE 'users." + (config.isUseUUIDs() ? user.getUUID().toString() : user.getName()) + "%' ORDER BY id ASC");
+        ResultSet res = mysql.returnQuery("SELECT `key`,`value` FROM `" + table + "` WHERE `key` LIKE ? ORDER BY id ASC", "users." + (config.isUseUUIDs() ? user.getUUID().toString() : user.getName()) + "%");
 
         permsconf.fromResult(res);
 
@@ -1,7 +1,9 @@
 package net.alpenblock.bungeeperms.io;
 
 import java.sql.ResultSet;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import net.alpenblock.bungeeperms.BPConfig;
@@ -32,15 +34,27 @@ public class MySQLUUIDPlayerDB implements UUIDPlayerDB
 
     private void createTable()
     {
+        MysqlSchema schema = new MysqlSchema(mysql, config.getTablePrefix() + "schema");
+
+        //step n upgrades the table to schema version n+1
+        List<String[]> steps = Arrays.asList(
+                new String[]
+                {
+                    "ALTER TABLE `" + table + "` ENGINE = InnoDB"
+                });
+
         if (!mysql.tableExists(table))
         {
             String t = "CREATE TABLE `" + table + "` ("
                     + "`id` INT( 64 ) NOT NULL AUTO_INCREMENT PRIMARY KEY ,"
                     + "`uuid` VARCHAR( 40 ) NOT NULL UNIQUE KEY,"
                     + "`player` VARCHAR( 20 ) NOT NULL UNIQUE KEY"
-                    + ") ENGINE = MYISAM ;";
+                    + ") ENGINE = InnoDB ;";
             mysql.runQuery(t);
+            schema.setVersion(table, steps.size());
         }
+
+        schema.upgrade(table, steps, "SELECT uuid FROM " + table + " WHERE player=?", "");
     }
 
     @Override
@@ -57,8 +71,8 @@ public class MySQLUUIDPlayerDB implements UUIDPlayerDB
         ResultSet res = null;
         try
         {
-            String q = "SELECT uuid FROM " + table + " WHERE player='" + player + "' ORDER BY id ASC LIMIT 1";
-            res = mysql.returnQuery(q);
+            String q = "SELECT uuid FROM " + table + " WHERE player=? ORDER BY id ASC LIMIT 1";
+            res = mysql.returnQuery(q, player);
             if (res.last())
             {
                 ret = UUID.fromString(res.getString("uuid"));
@@ -84,8 +98,8 @@ public class MySQLUUIDPlayerDB implements UUIDPlayerDB
         ResultSet res = null;
         try
         {
-            String q = "SELECT player FROM " + table + " WHERE uuid='" + uuid + "'";
-            res = mysql.returnQuery(q);
+            String q = "SELECT player FROM " + table + " WHERE uuid=?";
+            res = mysql.returnQuery(q, uuid.toString());
             if (res.last())
             {
                 ret = res.getString("player");
@@ -106,8 +120,8 @@ public class MySQLUUIDPlayerDB implements UUIDPlayerDB
     @Override
     public void update(UUID uuid, String player)
     {
-        mysql.runQuery("DELETE FROM " + table + " WHERE uuid='" + uuid + "' OR player='" + player + "'");
-        mysql.runQuery("INSERT IGNORE INTO " + table + " (uuid, player) VALUES ('" + uuid + "', '" + player + "')");
+        //replaces the rows with the same uuid or player in one statement
+        mysql.runQuery("REPLACE INTO " + table + " (uuid, player) VALUES (?, ?)", uuid.toString(), player);
     }
 
     @Override
@@ -0,0 +1,148 @@
+package net.alpenblock.bungeeperms.io;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import net.alpenblock.bungeeperms.BungeePerms;
+import net.alpenblock.bungeeperms.Lang;
+import net.alpenblock.bungeeperms.Mysql;
+
+/**
+ * Keeps track of the schema versions of the mysql tables and upgrades them.
+ * <p>
+ * The versions are stored in their own table. An upgrade is a list of steps; step n upgrades a table to version n+1.
+ * Each step is a list of statements. Steps have to be safe to run again, e.g. if the version table was lost, so
+ * statements which fail because an index already exists are skipped.
+ */
+public class MysqlSchema
+{
+
+    //duplicate key name
+    private static final int ER_DUP_KEYNAME = 1061;
+
+    private final Mysql mysql;
+    private final String table;
+
+    public MysqlSchema(Mysql mysql, String table)
+    {
+        this.mysql = mysql;
+        this.table = table;
+
+        mysql.runQuery("CREATE TABLE IF NOT EXISTS `" + table + "` ("
+                + "`table` VARCHAR( 64 ) NOT NULL PRIMARY KEY ,"
+                + "`version` INT NOT NULL"
+                + ") ENGINE = InnoDB ;");
+    }
+
+    /**
+     * Gets the schema version of a table.
+     *
+     * @param t the table
+     * @return the version or 0 if the table was never upgraded
+     */
+    public int getVersion(String t)
+    {
+        ResultSet res = null;
+        try
+        {
+            res = mysql.returnQuery("SELECT `version` FROM `" + table + "` WHERE `table`=?", t);
+            if (res.next())
+            {
+                return res.getInt("version");
+            }
+        }
+        catch (Exception e)
+        {
+            BungeePerms.getInstance().getDebug().log(e);
+        }
+        finally
+        {
+            Mysql.closeResultSet(res);
+        }
+        return 0;
+    }
+
+    public void setVersion(String t, int version)
+    {
+        mysql.runQuery("REPLACE INTO `" + table + "` (`table`,`version`) VALUES (?,?)", t, version);
+    }
+
+    /**
+     * Runs all steps the given table is missing. The sample query is timed before and after the upgrade and the
+     * result is logged.
+     *
+     * @param t the table to upgrade
+     * @param steps the statements of each step
+     * @param sample a query which should get faster by the upgrade
+     * @param sampleparams the parameters of the sample query
+     */
+    public void upgrade(String t, List<String[]> steps, String sample, Object... sampleparams)
+    {
+        int version = getVersion(t);
+        if (version >= steps.size())
+        {
+            return;
+        }
+
+        double before = time(sample, sampleparams);
+        long start = System.nanoTime();
+        for (int i = version; i < steps.size(); i++)
+        {
+            for (String statement : steps.get(i))
+            {
+                run(statement);
+            }
+            setVersion(t, i + 1);
+        }
+        double took = (System.nanoTime() - start) / 1000000D;
+        double after = time(sample, sampleparams);
+
+        BungeePerms.getLogger().info(Lang.translate(Lang.MessageType.SCHEMA_UPGRADED, t, version, steps.size(),
+                                                    format(took), format(before), format(after)));
+    }
+
+    private void run(String statement)
+    {
+        try
+        {
+            mysql.runQuery(statement);
+        }
+        catch (RuntimeException e)
+        {
+            //already done
+            if (e.getCause() instanceof SQLException && ((SQLException) e.getCause()).getErrorCode() == ER_DUP_KEYNAME)
+            {
+                return;
+            }
+            throw e;
+        }
+    }
+
+    //runs the query and reads the whole result; returns the time in milliseconds
+    private double time(String query, Object... params)
+    {
+        long start = System.nanoTime();
+        ResultSet res = null;
+        try
+        {
+            res = mysql.returnQuery(query, params);
+            while (res.next())
+            {
+            }
+        }
+        catch (Exception e)
+        {
+            BungeePerms.getInstance().getDebug().log(e);
+        }
+        finally
+        {
+            Mysql.closeResultSet(res);
+        }
+        return (System.nanoTime() - start) / 1000000D;
+    }
+
+    private static String format(double ms)
+    {
+        return String.format("%.2f", ms);
+    }
+}
@@ -37,6 +37,7 @@ public class YAMLBackEnd implements BackEnd
         checkPermFile();
 
         permsconf = new Config(plugin, permspath);
+        permsconf.setWriteBehind(config.getYamlFlushInterval(), config.getYamlMaxUnsaved());
     }
 
     @Override
@@ -52,6 +53,12 @@ public class YAMLBackEnd implements BackEnd
         permsconf.load();
     }
 
+    @Override
+    public void flush()
+    {
+        permsconf.flush();
+    }
+
     @Override
     public List<Group> loadGroups()
     {
@@ -619,8 +626,11 @@ public class YAMLBackEnd implements BackEnd
     @Override
     public void clearDatabase()
     {
+        //a pending flush of the old config would write the old tree again
+        permsconf.discard();
         new File(BungeePerms.getInstance().getPlugin().getPluginFolder() + permspath).delete();
         permsconf = new Config(BungeePerms.getInstance().getPlugin(), permspath);
+        permsconf.setWriteBehind(config.getYamlFlushInterval(), config.getYamlMaxUnsaved());
         load();
     }
 
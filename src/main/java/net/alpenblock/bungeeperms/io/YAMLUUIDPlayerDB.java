@@ -1,21 +1,47 @@
 package net.alpenblock.bungeeperms.io;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import net.alpenblock.bungeeperms.BungeePerms;
 import net.alpenblock.bungeeperms.Config;
-
+import net.alpenblock.bungeeperms.Statics;
+
+/**
+ * UUID player db in uuidplayerdb.yml.
+ * <p>
+ * All entries are held in memory and indexed in both directions. Updates are appended to a journal file instead of
+ * rewriting the yml file. The journal is merged into the yml file on startup and whenever it gets too long. Each
+ * journal entry is a line; a last line without its newline was cut off and is ignored.
+ */
 public class YAMLUUIDPlayerDB implements UUIDPlayerDB
 {
 
+    //journal entries until the journal is merged into the yml file
+    private static final int JOURNAL_LIMIT = 10000;
+
     private Config uuidconf;
+    private final File journal;
+    private int journalSize;
+    //the journal ends with a cut off line; the next entry has to start on a new line
+    private boolean journalTail;
+
+    private final ConcurrentHashMap<UUID, String> names = new ConcurrentHashMap<>();
+    //lower case name -> uuid
+    private final ConcurrentHashMap<String, UUID> uuids = new ConcurrentHashMap<>();
 
     public YAMLUUIDPlayerDB()
     {
+        journal = new File(BungeePerms.getInstance().getPlugin().getPluginFolder(), "/uuidplayerdb.journal");
+
         uuidconf = new Config(BungeePerms.getInstance().getPlugin(), "/uuidplayerdb.yml");
         uuidconf.load();
+        load();
     }
 
     @Override
@@ -27,67 +53,160 @@ public class YAMLUUIDPlayerDB implements UUIDPlayerDB
     @Override
     public UUID getUUID(String player)
     {
-        UUID ret = null;
-
-        for (String uuid : uuidconf.getSubNodes(""))
+        if (player == null)
         {
-            String p = uuidconf.getString(uuid, "");
-            if (p.equalsIgnoreCase(player))
-            {
-                ret = UUID.fromString(uuid);
-            }
+            return null;
         }
-
-        return ret;
+        return uuids.get(Statics.toLower(player));
     }
 
     @Override
     public String getPlayerName(UUID uuid)
     {
-        String ret = null;
+        if (uuid == null)
+        {
+            return null;
+        }
+        return names.get(uuid);
+    }
 
-        for (String suuid : uuidconf.getSubNodes(""))
+    @Override
+    public synchronized void update(UUID uuid, String player)
+    {
+        //nothing changed
+        if (player.equals(names.get(uuid)) && uuid.equals(uuids.get(Statics.toLower(player))))
         {
-            if (suuid.equalsIgnoreCase(uuid.toString()))
-            {
-                ret = uuidconf.getString(suuid, "");
-            }
+            return;
         }
 
-        return ret;
+        try (FileWriter w = new FileWriter(journal, true))
+        {
+            w.write((journalTail ? "\n" : "") + uuid + " " + player + "\n");
+            journalTail = false;
+        }
+        catch (IOException e)
+        {
+            //the entry might be written in part
+            journalTail = true;
+            BungeePerms.getInstance().getDebug().log(e);
+        }
+        journalSize++;
+
+        apply(uuid, player);
+
+        if (journalSize >= JOURNAL_LIMIT)
+        {
+            compact();
+        }
     }
 
     @Override
-    public void update(UUID uuid, String player)
+    public Map<UUID, String> getAll()
+    {
+        return new HashMap<>(names);
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        uuidconf.discard();
+        new File(BungeePerms.getInstance().getPlugin().getPluginFolder(), "/uuidplayerdb.yml").delete();
+        journal.delete();
+        journalSize = 0;
+        journalTail = false;
+        names.clear();
+        uuids.clear();
+
+        uuidconf = new Config(BungeePerms.getInstance().getPlugin(), "/uuidplayerdb.yml");
+        uuidconf.load();
+    }
+
+    private synchronized void load()
     {
         for (String suuid : uuidconf.getSubNodes(""))
         {
-            if (suuid.equalsIgnoreCase(uuid.toString()) || uuidconf.getString(suuid, "").equalsIgnoreCase(player))
+            UUID uuid = Statics.parseUUID(suuid);
+            String player = uuidconf.getString(suuid, "");
+            if (uuid == null || player.isEmpty())
+            {
+                continue;
+            }
+
+            //a player name might be listed twice; the last one wins
+            String old = names.put(uuid, player);
+            if (old != null)
+            {
+                uuids.remove(Statics.toLower(old), uuid);
+            }
+            uuids.put(Statics.toLower(player), uuid);
+        }
+
+        //replay the changes since the last compaction
+        if (!journal.exists())
+        {
+            return;
+        }
+        try
+        {
+            String content = new String(Files.readAllBytes(journal.toPath()));
+
+            //a crash might have left a half written last line; only lines ended by a newline are complete
+            int end = content.lastIndexOf('\n');
+            journalTail = end != content.length() - 1;
+            for (String line : content.substring(0, end + 1).split("\n"))
             {
-                uuidconf.deleteNode(suuid);
+                String[] parts = line.split(" ");
+                UUID uuid = parts.length == 2 ? Statics.parseUUID(parts[0]) : null;
+                if (uuid == null || parts[1].isEmpty())
+                {
+                    continue;
+                }
+                apply(uuid, parts[1]);
+                journalSize++;
             }
         }
-        uuidconf.setStringAndSave(uuid.toString(), player);
+        catch (IOException e)
+        {
+            BungeePerms.getInstance().getDebug().log(e);
+        }
+
+        if (journalSize > 0)
+        {
+            compact();
+        }
     }
 
-    @Override
-    public Map<UUID, String> getAll()
+    //updates the index and the yml tree; callers hold the lock
+    private void apply(UUID uuid, String player)
     {
-        Map<UUID, String> ret = new HashMap<>();
+        String oldname = names.put(uuid, player);
+        if (oldname != null && !oldname.equalsIgnoreCase(player))
+        {
+            uuids.remove(Statics.toLower(oldname), uuid);
+        }
 
-        for (String suuid : uuidconf.getSubNodes(""))
+        //the name now belongs to this uuid
+        UUID olduuid = uuids.put(Statics.toLower(player), uuid);
+        if (olduuid != null && !olduuid.equals(uuid))
         {
-            ret.put(UUID.fromString(suuid), uuidconf.getString(suuid, ""));
+            names.remove(olduuid);
+            uuidconf.setString(olduuid.toString(), null);
         }
 
-        return ret;
+        uuidconf.setString(uuid.toString(), player);
     }
 
-    @Override
-    public void clear()
+    //writes the yml file and empties the journal; callers hold the lock
+    private void compact()
     {
-        new File(BungeePerms.getInstance().getPlugin().getPluginFolder(), "/uuidplayerdb.yml").delete();
-        uuidconf = new Config(BungeePerms.getInstance().getPlugin(), "/uuidplayerdb.yml");
-        uuidconf.load();
+        uuidconf.save();
+
+        //keep the journal if the yml file could not be written
+        if (!uuidconf.hasUnsavedChanges())
+        {
+            journal.delete();
+            journalSize = 0;
+            journalTail = false;
+        }
     }
 }
@@ -25,41 +25,50 @@ public class MysqlPermEntity
         load(res);
     }
 
-    private void load(ResultSet res) throws SQLException
+    MysqlPermEntity(String name, EntityType type)
     {
-        if (res.first())
-        {
-            name = Mysql.unescape(res.getString("name"));
-            type = EntityType.getByCode(res.getInt("type"));
-        }
-
-        res.beforeFirst();
+        this(name, type, new HashMap<String, List<ValueEntry>>());
+    }
 
+    private void load(ResultSet res) throws SQLException
+    {
+        //forward only
         while (res.next())
         {
-            String key = Mysql.unescape(res.getString("key"));
-            String value = Mysql.unescape(res.getString("value"));
-            String server = Mysql.unescape(res.getString("server"));
-            String world = null;
-            if (server != null)
+            if (name == null)
             {
-                world = Mysql.unescape(res.getString("world"));
+                name = Mysql.unescape(res.getString("name"));
+                type = EntityType.getByCode(res.getInt("type"));
             }
+            addEntry(res);
+        }
+
+        //close res? -> no will be done
+    }
 
-            //add entry
-            ValueEntry ve = new ValueEntry(value, server, world);
+    //adds the value of the current row
+    void addEntry(ResultSet res) throws SQLException
+    {
+        String key = Mysql.unescape(res.getString("key"));
+        String value = Mysql.unescape(res.getString("value"));
+        String server = Mysql.unescape(res.getString("server"));
+        String world = null;
+        if (server != null)
+        {
+            world = Mysql.unescape(res.getString("world"));
+        }
 
-            List<ValueEntry> e = data.get(key);
-            if (e == null)
-            {
-                e = new ArrayList<>();
-                data.put(key, e);
-            }
+        //add entry
+        ValueEntry ve = new ValueEntry(value, server, world);
 
-            e.add(ve);
+        List<ValueEntry> e = data.get(key);
+        if (e == null)
+        {
+            e = new ArrayList<>();
+            data.put(key, e);
         }
 
-        //close res? -> no will be done
+        e.add(ve);
     }
 
     public List<ValueEntry> getData(String type)
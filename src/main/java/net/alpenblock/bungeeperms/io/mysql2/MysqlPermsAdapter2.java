@@ -2,9 +2,11 @@ package net.alpenblock.bungeeperms.io.mysql2;
 
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import net.alpenblock.bungeeperms.BungeePerms;
 import net.alpenblock.bungeeperms.Mysql;
+import net.alpenblock.bungeeperms.io.MysqlSchema;
 
 public class MysqlPermsAdapter2
 {
@@ -18,8 +20,9 @@ public class MysqlPermsAdapter2
         this.table = table;
     }
 
-    public void createTable()
+    public void createTable(MysqlSchema schema)
     {
+        List<String[]> steps = schemaSteps();
         if (!mysql.tableExists(table))
         {
             String t = "CREATE TABLE `" + table + "` ("
@@ -29,10 +32,32 @@ public class MysqlPermsAdapter2
                     + "`key` VARCHAR( 256 ) NOT NULL, "
                     + "`value` VARCHAR( 256 ) NOT NULL, "
                     + "`server` VARCHAR( 64 ), "
-                    + "`world` VARCHAR( 64 ) "
-                    + ") ENGINE = MYISAM ;";
+                    + "`world` VARCHAR( 64 ), "
+                    + "INDEX `entity` (`type`, `name`, `key`(32), `server`(32), `world`(32)), "
+                    + "INDEX `value` (`type`, `key`(32), `value`(64)) "
+                    + ") ENGINE = InnoDB ;";
             mysql.runQuery(t);
+            schema.setVersion(table, steps.size());
         }
+
+        schema.upgrade(table, steps, "SELECT `key` FROM `" + table + "` WHERE `type`=? AND `name`=?", EntityType.Group.getCode(), "default");
+    }
+
+    //step n upgrades the table to schema version n+1
+    private List<String[]> schemaSteps()
+    {
+        return Arrays.asList(
+                new String[]
+                {
+                    //transactions and row locks
+                    "ALTER TABLE `" + table + "` ENGINE = InnoDB"
+                },
+                new String[]
+                {
+                    //prefix lengths keep the keys below the index size limit of all row formats
+                    "ALTER TABLE `" + table + "` ADD INDEX `entity` (`type`, `name`, `key`(32), `server`(32), `world`(32))",
+                    "ALTER TABLE `" + table + "` ADD INDEX `value` (`type`, `key`(32), `value`(64))"
+                });
     }
 
     public List<String> getGroups()
@@ -95,7 +120,7 @@ public class MysqlPermsAdapter2
         try
         {
             res = mysql.returnQuery("SELECT `name`,`type`,`key`,`value`,`server`,`world` FROM `" + table + "` "
-                    + "WHERE `type`=" + type.getCode() + " AND `name`='" + Mysql.escape(name) + "' ORDER BY id ASC");
+                    + "WHERE `type`=? AND `name`=? ORDER BY id ASC", type.getCode(), name);
 
             mpe = new MysqlPermEntity(res);
         }
@@ -111,6 +136,51 @@ public class MysqlPermsAdapter2
         return mpe;
     }
 
+    /**
+     * Loads all entities of the given type with one query. The rows are streamed in name order and grouped into
+     * entities while reading.
+     *
+     * @param type the type of the entities
+     * @return the loaded entities
+     * @throws RuntimeException if the query fails, even after some of the rows were read
+     */
+    public List<MysqlPermEntity> getEntities(EntityType type)
+    {
+        List<MysqlPermEntity> ret = new ArrayList<>();
+
+        ResultSet res = null;
+        try
+        {
+            res = mysql.streamQuery("SELECT `name`,`type`,`key`,`value`,`server`,`world` FROM `" + table + "` "
+                    + "WHERE `type`=? ORDER BY `name` ASC, id ASC", type.getCode());
+
+            MysqlPermEntity mpe = null;
+            while (res.next())
+            {
+                String name = Mysql.unescape(res.getString("name"));
+                //names are compared like mysql does
+                if (mpe == null || !mpe.getName().equalsIgnoreCase(name))
+                {
+                    mpe = new MysqlPermEntity(name, type);
+                    ret.add(mpe);
+                }
+                mpe.addEntry(res);
+            }
+        }
+        catch (Exception e)
+        {
+            //a partial list would look like deleted groups or users to the caller
+            BungeePerms.getInstance().getDebug().log(e);
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            Mysql.closeResultSet(res);
+        }
+
+        return ret;
+    }
+
     public MysqlPermEntity getGroup(String name)
     {
         return getEntity(name, EntityType.Group);
@@ -133,7 +203,7 @@ public class MysqlPermsAdapter2
         ResultSet res = null;
         try
         {
-            res = mysql.returnQuery("SELECT DISTINCT `name` FROM `" + table + "` WHERE `name`='" + Mysql.escape(name) + "' AND `type`=" + type.getCode() + " ORDER BY id ASC");
+            res = mysql.returnQuery("SELECT DISTINCT `name` FROM `" + table + "` WHERE `name`=? AND `type`=? ORDER BY id ASC", name, type.getCode());
             if (res.next())
             {
                 found = true;
@@ -154,76 +224,73 @@ public class MysqlPermsAdapter2
 
     public void deleteEntity(String name, EntityType type)
     {
-        mysql.runQuery("DELETE FROM `" + table + "` WHERE `name`='" + Mysql.escape(name) + "' AND `type`=" + type.getCode());
+        mysql.runQuery("DELETE FROM `" + table + "` WHERE `name`=? AND `type`=?", name, type.getCode());
     }
 
-    public void saveData(String name, EntityType type, String key, List<ValueEntry> values)
+    public void saveData(final String name, final EntityType type, final String key, final List<ValueEntry> values)
     {
-        //delete entries
-        String delq = "DELETE FROM `" + table + "` WHERE `name`='" + Mysql.escape(name) + "' AND `type`=" + type.getCode() + " AND `key`='" + Mysql.escape(key) + "'";
-        mysql.runQuery(delq);
+        mysql.runTransaction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                //delete entries
+                String delq = "DELETE FROM `" + table + "` WHERE `name`=? AND `type`=? AND `key`=?";
+                mysql.runQuery(delq, name, type.getCode(), key);
 
-        //add values
-        doSaveData(name, type, key, values);
+                //add values
+                doSaveData(name, type, key, values);
+            }
+        });
     }
 
-    public void saveData(String name, EntityType type, String key, List<ValueEntry> values, String server, String world)
+    public void saveData(final String name, final EntityType type, final String key, final List<ValueEntry> values, final String server, final String world)
     {
-        //delete entries
-        String delq = "DELETE FROM `" + table + "` WHERE `name`='" + Mysql.escape(name) + "' AND `type`=" + type.getCode() + " AND `key`='" + Mysql.escape(key) + "' AND ";
-        if (server == null)
-        {
-            delq += "`server` IS NULL";
-        }
-        else
-        {
-            delq += "`server`='" + Mysql.escape(server) + "'";
-        }
-        delq += " AND ";
-        if (world == null)
+        mysql.runTransaction(new Runnable()
         {
-            delq += "`world` IS NULL";
-        }
-        else
-        {
-            delq += "`world`='" + Mysql.escape(world) + "'";
-        }
-        mysql.runQuery(delq);
+            @Override
+            public void run()
+            {
+                //delete entries
+                //null safe comparison of server and world
+                String delq = "DELETE FROM `" + table + "` WHERE `name`=? AND `type`=? AND `key`=? AND `server`<=>? AND `world`<=>?";
+                mysql.runQuery(delq, name, type.getCode(), key, server, world);
 
-        //add values
-        doSaveData(name, type, key, values);
+                //add values
+                doSaveData(name, type, key, values);
+            }
+        });
+    }
+
+    /**
+     * Runs the given task in one transaction. Used to save all data of an entity at once.
+     *
+     * @param task the task to run
+     */
+    public void runTransaction(Runnable task)
+    {
+        mysql.runTransaction(task);
     }
 
     private void doSaveData(String name, EntityType type, String key, List<ValueEntry> values)
     {
+        List<Object[]> rows = new ArrayList<>(values.size());
         for (ValueEntry val : values)
         {
             if (val.getValue() == null)
             {
                 continue;
             }
-            String insq = "INSERT INTO `" + table + "` (`name`,`type`,`key`,`value`,`server`,`world`) VALUES"
-                    + "('" + Mysql.escape(name) + "'," + type.getCode() + ",'" + Mysql.escape(key) + "','" + Mysql.escape(val.getValue()) + "',";
-            if (val.getServer() == null)
+            String server = val.getServer();
+            String world = server == null ? null : val.getWorld();
+            rows.add(new Object[]
             {
-                insq += "null,null";
-            }
-            else
-            {
-                insq += "'" + Mysql.escape(val.getServer()) + "',";
-                if (val.getWorld() == null)
-                {
-                    insq += "null";
-                }
-                else
-                {
-                    insq += "'" + Mysql.escape(val.getWorld()) + "'";
-                }
-            }
-
-            insq += ")";
-            mysql.runQuery(insq);
+                name, type.getCode(), key, val.getValue(), server, world
+            });
         }
+
+        String insq = "INSERT INTO `" + table + "` (`name`,`type`,`key`,`value`,`server`,`world`) VALUES (?,?,?,?,?,?)";
+        mysql.runBatch(insq, rows);
     }
 
     public List<String> getGroupUsers(String group)
@@ -233,7 +300,7 @@ public class MysqlPermsAdapter2
         ResultSet res = null;
         try
         {
-            res = mysql.returnQuery("SELECT DISTINCT `name` FROM `" + table + "` WHERE `type`=" + EntityType.User.getCode() + " AND `key`='groups' AND `value`='" + Mysql.escape(group) + "' ORDER BY id ASC");
+            res = mysql.returnQuery("SELECT DISTINCT `name` FROM `" + table + "` WHERE `type`=? AND `key`='groups' AND `value`=? ORDER BY id ASC", EntityType.User.getCode(), group);
             while (res.next())
             {
                 String name = Mysql.unescape(res.getString("name"));
@@ -1,11 +1,16 @@
 package net.alpenblock.bungeeperms.platform;
 
+import java.util.concurrent.Future;
 import net.alpenblock.bungeeperms.Group;
 import net.alpenblock.bungeeperms.User;
 
+/**
+ * Fires the events of BungeePerms on the platform. The events may be fired later; the returned future completes when
+ * the event was fired.
+ */
 public interface EventDispatcher 
 {
-    public void dispatchReloadedEvent();
-    public void dispatchGroupChangeEvent(Group g);
-    public void dispatchUserChangeEvent(User u);
+    public Future<?> dispatchReloadedEvent();
+    public Future<?> dispatchGroupChangeEvent(Group g);
+    public Future<?> dispatchUserChangeEvent(User u);
 }
@@ -1,6 +1,8 @@
 package net.alpenblock.bungeeperms.platform;
 
+import java.util.List;
 import net.alpenblock.bungeeperms.Group;
+import net.alpenblock.bungeeperms.NetworkChange;
 import net.alpenblock.bungeeperms.User;
 
 public interface NetworkNotifier
@@ -19,4 +21,20 @@ public interface NetworkNotifier
     public void reloadGroups(String origin);
 
     public void reloadAll(String origin);
+
+    /**
+     * Queues a change for the other servers. The changes queued in a row are sent together in as few plugin messages
+     * as possible.
+     *
+     * @param change the change
+     */
+    public void sendChange(NetworkChange change);
+
+    /**
+     * Sends changes to the other servers at once.
+     *
+     * @param changes the changes
+     * @param origin the server the changes came from; it does not get them back
+     */
+    public void sendChanges(List<NetworkChange> changes, String origin);
 }
@@ -37,4 +37,11 @@ public interface PlatformPlugin
     public int registerRepeatingTask(Runnable r, long delay, long interval);
     
     public void cancelTask(int id);
+
+    /**
+     * Checks if the current thread is the main thread of the server, which must not be blocked.
+     *
+     * @return true if called from the main thread
+     */
+    public boolean isMainThread();
 }
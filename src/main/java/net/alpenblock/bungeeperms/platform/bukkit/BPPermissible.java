@@ -1,13 +1,17 @@
 package net.alpenblock.bungeeperms.platform.bukkit;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import net.alpenblock.bungeeperms.BungeePerms;
 import net.alpenblock.bungeeperms.Statics;
@@ -29,6 +33,9 @@ import org.bukkit.plugin.Plugin;
 public class BPPermissible extends PermissibleBase
 {
 
+    private static final int MAX_CACHED_PATTERNS = 10000;
+    private static final Map<String, Pattern> wildcardPatterns = new ConcurrentHashMap<>();
+
     private CommandSender sender;
     private PermissionAttachment attachment;
     private Map<String, PermissionAttachmentInfo> permissions;
@@ -40,6 +47,10 @@ public class BPPermissible extends PermissibleBase
     private boolean opdisabled = false;
     private boolean init = false;
 
+    //counts the changes of the superperms; they are changed by bukkit whenever an attachment changes
+    private volatile int superpermsChanges = 0;
+    private volatile ExpandedSuperPerms expandedSuperPerms;
+
     public BPPermissible(CommandSender sender, User u, Permissible oldPermissible)
     {
         super(sender);
@@ -68,8 +79,16 @@ public class BPPermissible extends PermissibleBase
                 {
                     return existing;
                 }
+                superpermsChanges++;
                 return super.put(k, v);
             }
+
+            @Override
+            public void clear()
+            {
+                superpermsChanges++;
+                super.clear();
+            }
         };
 
         //inject an opable
@@ -177,46 +196,48 @@ public class BPPermissible extends PermissibleBase
 
             if (!config.isUseRegexPerms())
             {
+                //lower case name -> entry; sorted so a wildcard only visits the entries starting with its prefix
+                TreeMap<String, PermissionAttachmentInfo> index = new TreeMap<>();
+                for (Map.Entry<String, PermissionAttachmentInfo> e : permissions.entrySet())
+                {
+                    index.put(e.getKey().toLowerCase(), e.getValue());
+                }
+
                 for (PermissionAttachmentInfo pai : childperms)
                 {
-                    if (pai.getPermission().endsWith("*"))
+                    String perm = pai.getPermission();
+                    if (perm.endsWith("*"))
                     {
-                        boolean found = false;
-                        String regex = "^" + pai.getPermission().toLowerCase().replaceAll("\\.", "\\\\.").replaceAll("\\*", ".*") + "$";
-                        Pattern pat = Pattern.compile(regex);
-                        for (Map.Entry<String, PermissionAttachmentInfo> e : permissions.entrySet())
+                        int star = perm.indexOf('*');
+                        String prefix = perm.substring(0, star);
+                        Pattern pat = star == perm.length() - 1 ? null : getWildcardPattern(perm);
+                        for (Map.Entry<String, PermissionAttachmentInfo> e : index.tailMap(prefix, true).entrySet())
                         {
-                            if (pat.matcher(e.getKey().toLowerCase()).find())
+                            if (!e.getKey().startsWith(prefix))
+                            {
+                                break;
+                            }
+                            if (pat == null || pat.matcher(e.getKey()).find())
                             {
                                 Statics.setField(e.getValue(), pai.getValue(), "value");
-                                if (e.getKey().equalsIgnoreCase(pai.getPermission()))
-                                {
-                                    found = true;
-                                }
                             }
                         }
-                        if (!found)
-                        {
-                            permissions.put(pai.getPermission(), pai);
-                        }
                     }
                     else
                     {
-                        boolean found = false;
-                        for (Map.Entry<String, PermissionAttachmentInfo> e : permissions.entrySet())
-                        {
-                            if (e.getKey().equalsIgnoreCase(pai.getPermission()))
-                            {
-                                Statics.setField(e.getValue(), pai.getValue(), "value");
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (!found)
+                        PermissionAttachmentInfo existing = index.get(perm);
+                        if (existing != null)
                         {
-                            permissions.put(pai.getPermission(), pai);
+                            Statics.setField(existing, pai.getValue(), "value");
                         }
                     }
+
+                    //existing entries got the new value above
+                    if (!index.containsKey(perm))
+                    {
+                        index.put(perm, pai);
+                        permissions.put(perm, pai);
+                    }
                 }
             }
             else
@@ -232,6 +253,24 @@ public class BPPermissible extends PermissibleBase
         }
     }
 
+    private static Pattern getWildcardPattern(String perm)
+    {
+        Pattern pat = wildcardPatterns.get(perm);
+        if (pat == null)
+        {
+            String regex = "^" + perm.replaceAll("\\.", "\\\\.").replaceAll("\\*", ".*") + "$";
+            pat = Pattern.compile(regex);
+
+            //bounded like the regex permission patterns; nodes of plugins come and go over the server's lifetime
+            if (wildcardPatterns.size() >= MAX_CACHED_PATTERNS)
+            {
+                wildcardPatterns.clear();
+            }
+            wildcardPatterns.put(perm, pat);
+        }
+        return pat;
+    }
+
     private List<PermissionAttachmentInfo> addChildPerms(List<String> perms)
     {
         Map<String, Boolean> map = new LinkedHashMap();
@@ -240,25 +279,56 @@ public class BPPermissible extends PermissibleBase
             map.put(perm.startsWith("-") ? perm.substring(1) : perm, !perm.startsWith("-"));
         }
 
-        return addChildPerms(map);
-    }
-
-    private List<PermissionAttachmentInfo> addChildPerms(Map<String, Boolean> perms)
-    {
-        List<PermissionAttachmentInfo> permlist = new LinkedList();
-        for (Map.Entry<String, Boolean> perm : perms.entrySet())
+        List<PermissionAttachmentInfo> permlist = new ArrayList<>();
+        for (Map.Entry<String, Boolean> perm : map.entrySet())
         {
-            PermissionAttachmentInfo pai = new PermissionAttachmentInfo(oldPermissible, perm.getKey().toLowerCase(), null, perm.getValue());
-            permlist.add(pai);
-            Permission permission = Bukkit.getPluginManager().getPermission(pai.getPermission());
-            if (permission != null && !permission.getChildren().isEmpty())
+            String name = perm.getKey().toLowerCase();
+            permlist.add(new PermissionAttachmentInfo(oldPermissible, name, null, perm.getValue()));
+
+            //the entries get their values changed by the merge, so each occurrence needs its own object
+            for (String child : ChildPermissions.get(name).getPerms())
             {
-                permlist.addAll(addChildPerms(permission.getChildren()));
+                boolean neg = child.startsWith("-");
+                permlist.add(new PermissionAttachmentInfo(oldPermissible, neg ? child.substring(1) : child, null, !neg));
             }
         }
         return permlist;
     }
 
+    /**
+     * Gets the superperms followed by their children. The list is kept until the superperms or the registered
+     * permissions change.
+     *
+     * @return the expanded superperms; the parents of the superperms themselves are null
+     */
+    public ChildPermissions.Children getExpandedSuperPerms()
+    {
+        ExpandedSuperPerms e = expandedSuperPerms;
+        int version = ChildPermissions.getVersion();
+        int changes = superpermsChanges;
+        if (e != null && e.version == version && e.changes == changes)
+        {
+            return e.children;
+        }
+
+        List<String> perms = new ArrayList<>();
+        List<String> parents = new ArrayList<>();
+        for (PermissionAttachmentInfo pai : getEffectiveSuperPerms())
+        {
+            String name = pai.getPermission().toLowerCase();
+            perms.add((pai.getValue() ? "" : "-") + name);
+            parents.add(null);
+
+            ChildPermissions.Children children = ChildPermissions.get(name);
+            perms.addAll(Arrays.asList(children.getPerms()));
+            parents.addAll(Arrays.asList(children.getParents()));
+        }
+
+        ChildPermissions.Children children = new ChildPermissions.Children(perms.toArray(new String[perms.size()]), parents.toArray(new String[parents.size()]));
+        expandedSuperPerms = new ExpandedSuperPerms(version, changes, children);
+        return children;
+    }
+
     public Set<PermissionAttachmentInfo> getEffectiveSuperPerms()
     {
         return new LinkedHashSet<>(superperms.values());
@@ -413,4 +483,13 @@ public class BPPermissible extends PermissibleBase
 
         recalculatePermissions();
     }
+
+    @AllArgsConstructor
+    private static class ExpandedSuperPerms
+    {
+
+        private final int version;
+        private final int changes;
+        private final ChildPermissions.Children children;
+    }
 }
@@ -1,6 +1,10 @@
 package net.alpenblock.bungeeperms.platform.bukkit;
 
-import lombok.SneakyThrows;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import net.alpenblock.bungeeperms.BungeePerms;
 import net.alpenblock.bungeeperms.Group;
 import net.alpenblock.bungeeperms.User;
 import net.alpenblock.bungeeperms.platform.EventDispatcher;
@@ -9,59 +13,94 @@ import net.alpenblock.bungeeperms.platform.bukkit.event.BungeePermsReloadedEvent
 import net.alpenblock.bungeeperms.platform.bukkit.event.BungeePermsUserChangedEvent;
 import org.bukkit.Bukkit;
 import org.bukkit.event.Event;
-import org.bukkit.plugin.Plugin;
 
+/**
+ * Fires the events on the main thread.
+ * <p>
+ * Events from other threads are queued and fired in batches by a single main thread task, so a change which touches
+ * many users costs one task instead of one per user. Queued events of the same user or group are merged. The caller
+ * does not wait; the returned future completes when the batch was fired.
+ */
 public class BukkitEventDispatcher implements EventDispatcher
 {
 
+    private final Object lock = new Object();
+    //key -> event; keeps the order of the first event of each key
+    private Map<String, Event> pending = new LinkedHashMap<>();
+    private FutureTask<Void> batch;
+
     @Override
-    public void dispatchReloadedEvent()
+    public Future<?> dispatchReloadedEvent()
     {
-        callSyncEvent(BukkitPlugin.getInstance(), new BungeePermsReloadedEvent());
+        return callSyncEvent("reload", new BungeePermsReloadedEvent());
     }
 
     @Override
-    public void dispatchGroupChangeEvent(Group g)
+    public Future<?> dispatchGroupChangeEvent(Group g)
     {
-        callSyncEvent(BukkitPlugin.getInstance(), new BungeePermsGroupChangedEvent(g));
+        return callSyncEvent("group;" + g.getName(), new BungeePermsGroupChangedEvent(g));
     }
 
     @Override
-    public void dispatchUserChangeEvent(User u)
+    public Future<?> dispatchUserChangeEvent(User u)
     {
-        callSyncEvent(BukkitPlugin.getInstance(), new BungeePermsUserChangedEvent(u));
+        return callSyncEvent("user;" + (u.getUUID() != null ? u.getUUID() : u.getName()), new BungeePermsUserChangedEvent(u));
     }
-    
-    @SneakyThrows
-    private static void runSync(Plugin p, Runnable r, boolean waitfinished)
+
+    private Future<?> callSyncEvent(String key, Event e)
     {
-        if (Bukkit.isPrimaryThread())
-        {
-            r.run();
-        }
-        else
+        FutureTask<Void> task;
+        boolean schedule = false;
+        synchronized (lock)
         {
-            int id = Bukkit.getScheduler().runTask(p, r).getTaskId();
-            if (waitfinished)
+            pending.put(key, e);
+            if (batch == null)
             {
-                while (Bukkit.getScheduler().isCurrentlyRunning(id) || Bukkit.getScheduler().isQueued(id))
+                batch = new FutureTask<>(new Runnable()
                 {
-                    Thread.sleep(1);
-                }
+                    @Override
+                    public void run()
+                    {
+                        fire();
+                    }
+                }, null);
+                schedule = true;
             }
+            task = batch;
+        }
+
+        //a batch only runs once, so running it here makes the scheduled run a no-op
+        if (Bukkit.isPrimaryThread())
+        {
+            task.run();
         }
+        else if (schedule)
+        {
+            Bukkit.getScheduler().runTask(BukkitPlugin.getInstance(), task);
+        }
+        return task;
     }
-    
-    private static void callSyncEvent(Plugin p, final Event e)
+
+    private void fire()
     {
-        Runnable r = new Runnable()
+        Map<String, Event> events;
+        synchronized (lock)
         {
-            @Override
-            public void run()
+            events = pending;
+            pending = new LinkedHashMap<>();
+            batch = null;
+        }
+
+        for (Event e : events.values())
+        {
+            try
             {
                 Bukkit.getPluginManager().callEvent(e);
             }
-        };
-        runSync(p, r, true);
+            catch (Exception ex)
+            {
+                BungeePerms.getInstance().getDebug().log(ex);
+            }
+        }
     }
 }
@@ -1,6 +1,7 @@
 package net.alpenblock.bungeeperms.platform.bukkit;
 
 import net.alpenblock.bungeeperms.BungeePerms;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -8,6 +9,7 @@ import java.util.UUID;
 import lombok.Getter;
 import net.alpenblock.bungeeperms.Group;
 import net.alpenblock.bungeeperms.Lang;
+import net.alpenblock.bungeeperms.NetworkChange;
 import net.alpenblock.bungeeperms.PermissionsManager;
 import net.alpenblock.bungeeperms.Statics;
 import net.alpenblock.bungeeperms.User;
@@ -26,6 +28,8 @@ import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerRegisterChannelEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
 import org.bukkit.permissions.Permissible;
 import org.bukkit.plugin.messaging.PluginMessageListener;
 
@@ -53,6 +57,7 @@ public class BukkitEventListener implements Listener, EventListener, PluginMessa
         }
         enabled = true;
         Bukkit.getPluginManager().registerEvents(this, BukkitPlugin.getInstance());
+        ChildPermissions.watch();
 
         //inject into console // seems to be best place here
         BPPermissible permissible = new BPPermissible(Bukkit.getConsoleSender(), null, Injector.getPermissible(Bukkit.getConsoleSender()));
@@ -80,6 +85,7 @@ public class BukkitEventListener implements Listener, EventListener, PluginMessa
         }
         enabled = false;
         Statics.unregisterListener(this);
+        ChildPermissions.unwatch();
 
         //uninject from console // seems to be best place here
         Injector.uninject(Bukkit.getConsoleSender());
@@ -183,6 +189,19 @@ public class BukkitEventListener implements Listener, EventListener, PluginMessa
         updateAttachment(p, e.getUser());
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent e)
+    {
+        //plugins register their permissions when they get enabled; covers registries which cannot be watched
+        ChildPermissions.invalidate();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent e)
+    {
+        ChildPermissions.invalidate();
+    }
+
     @EventHandler(priority = EventPriority.LOWEST)
     public void onPluginChannelRegister(PlayerRegisterChannelEvent e)
     {
@@ -191,6 +210,7 @@ public class BukkitEventListener implements Listener, EventListener, PluginMessa
             return;
         }
 
+        BukkitPlugin.getInstance().getNotifier().sendFrameSupport(e.getPlayer());
         BukkitPlugin.getInstance().getNotifier().sendWorldUpdate(e.getPlayer());
     }
 
@@ -206,6 +226,13 @@ public class BukkitEventListener implements Listener, EventListener, PluginMessa
             return;
         }
 
+        //changes made on other servers
+        if (NetworkChange.isFrame(bytes))
+        {
+            applyChanges(bytes);
+            return;
+        }
+
         String msg = new String(bytes);
         if (config.isDebug())
         {
@@ -225,14 +252,7 @@ public class BukkitEventListener implements Listener, EventListener, PluginMessa
         {
             Group g = pm().getGroup(userorgroup);
             pm().removeGroupFromCache(g);
-            for (Group gr : pm().getGroups())
-            {
-                gr.recalcPerms();
-            }
-            for (User u : pm().getUsers())
-            {
-                u.recalcPerms();
-            }
+            pm().recalcGroupPerms(g);
         }
         else if (cmd.equalsIgnoreCase("reloaduser"))
         {
@@ -262,6 +282,14 @@ public class BukkitEventListener implements Listener, EventListener, PluginMessa
             };
             Bukkit.getScheduler().runTaskLater(BukkitPlugin.getInstance(), r, 1);
         }
+        else if (cmd.equalsIgnoreCase(NetworkChange.ANNOUNCE))
+        {
+            //bungee reads frames of this version
+            if (String.valueOf(NetworkChange.VERSION).equals(userorgroup))
+            {
+                BukkitPlugin.getInstance().getNotifier().enableFrames();
+            }
+        }
         else if (cmd.equalsIgnoreCase("configcheck"))
         {
             String servername = data.get(1);
@@ -300,6 +328,51 @@ public class BukkitEventListener implements Listener, EventListener, PluginMessa
         }
     }
 
+    private void applyChanges(byte[] data)
+    {
+        List<NetworkChange> changes;
+        try
+        {
+            changes = NetworkChange.decode(data);
+        }
+        catch (IOException ex)
+        {
+            BungeePerms.getInstance().getDebug().log(ex);
+            return;
+        }
+        if (config.isDebug())
+        {
+            BungeePerms.getLogger().info("changes=" + changes);
+        }
+
+        for (NetworkChange c : changes)
+        {
+            try
+            {
+                if (c.getType() == NetworkChange.Type.RELOAD_ALL)
+                {
+                    Runnable r = new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            BungeePerms.getInstance().reload(false);
+                        }
+                    };
+                    Bukkit.getScheduler().runTaskLater(BukkitPlugin.getInstance(), r, 1);
+                }
+                else
+                {
+                    pm().applyChange(c);
+                }
+            }
+            catch (Exception ex)
+            {
+                BungeePerms.getInstance().getDebug().log(ex);
+            }
+        }
+    }
+
     private PermissionsManager pm()
     {
         return BungeePerms.getInstance().getPermissionsManager();
@@ -1,120 +1,93 @@
 package net.alpenblock.bungeeperms.platform.bukkit;
 
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import net.alpenblock.bungeeperms.BungeePerms;
 import net.alpenblock.bungeeperms.Group;
+import net.alpenblock.bungeeperms.NetworkChange;
+import net.alpenblock.bungeeperms.NetworkChange.Type;
 import net.alpenblock.bungeeperms.User;
 import net.alpenblock.bungeeperms.platform.NetworkNotifier;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+/**
+ * Sends the changes to bungee, which passes them on to the other servers.
+ * <p>
+ * Queued changes are sent on the next tick, so a bulk edit reaches bungee as a few frames instead of a message per
+ * change. Until bungee announced that it reads frames the text messages are sent instead.
+ */
 @RequiredArgsConstructor
 public class BukkitNotifier implements NetworkNotifier
 {
 
     private final BukkitConfig config;
 
-    @Override
-    public void deleteUser(User u, String origin)
+    //set when bungee announced that it reads frames
+    private volatile boolean frames;
+    private List<NetworkChange> pending = new ArrayList<>();
+    private final Runnable flush = new Runnable()
     {
-        //if standalone don't notify bungee
-        if (config.isStandalone())
+        @Override
+        public void run()
         {
-            return;
+            List<NetworkChange> changes;
+            synchronized (BukkitNotifier.this)
+            {
+                changes = pending;
+                pending = new ArrayList<>();
+            }
+            sendChanges(changes, null);
         }
+    };
 
-        if (config.isUseUUIDs())
-        {
-            sendPM(u.getUUID(), "deleteUser;" + u.getUUID(), origin);
-        }
-        else
-        {
-            sendPM(u.getName(), "deleteUser;" + u.getName(), origin);
-        }
+    @Override
+    public void deleteUser(User u, String origin)
+    {
+        sendChange(NetworkChange.user(Type.USER_DELETE, u, null, null, null));
     }
 
     @Override
     public void deleteGroup(Group g, String origin)
     {
-        //if standalone don't notify bungee
-        if (config.isStandalone())
-        {
-            return;
-        }
-
-        sendPMAll("deleteGroup;" + g.getName(), origin);
+        sendChange(NetworkChange.group(Type.GROUP_DELETE, g, null, null, null));
     }
 
     @Override
     public void reloadUser(User u, String origin)
     {
-        //if standalone don't notify bungee
-        if (config.isStandalone())
-        {
-            return;
-        }
-
-        if (config.isUseUUIDs())
-        {
-            sendPM(u.getUUID(), "reloadUser;" + u.getUUID(), origin);
-        }
-        else
-        {
-            sendPM(u.getName(), "reloadUser;" + u.getName(), origin);
-        }
+        sendChange(NetworkChange.user(Type.USER_RELOAD, u, null, null, null));
     }
 
     @Override
     public void reloadGroup(Group g, String origin)
     {
-        //if standalone don't notify bungee
-        if (config.isStandalone())
-        {
-            return;
-        }
-
-        sendPMAll("reloadGroup;" + g.getName(), origin);
+        sendChange(NetworkChange.group(Type.GROUP_RELOAD, g, null, null, null));
     }
 
     @Override
     public void reloadUsers(String origin)
     {
-        //if standalone don't notify bungee
-        if (config.isStandalone())
-        {
-            return;
-        }
-
-        sendPMAll("reloadUsers;", origin);
+        sendChange(NetworkChange.all(Type.RELOAD_USERS));
     }
 
     @Override
     public void reloadGroups(String origin)
     {
-        //if standalone don't notify bungee
-        if (config.isStandalone())
-        {
-            return;
-        }
-
-        sendPMAll("reloadGroups", origin);
+        sendChange(NetworkChange.all(Type.RELOAD_GROUPS));
     }
 
     @Override
     public void reloadAll(String origin)
     {
-        //if standalone don't notify bungee
-        if (config.isStandalone())
-        {
-            return;
-        }
-
-        sendPMAll("reloadall", origin);
+        sendChange(NetworkChange.all(Type.RELOAD_ALL));
     }
 
-    //bukkit-bungeeperms reload information functions
-    private void sendPM(String player, String msg, String origin)
+    @Override
+    public void sendChange(NetworkChange change)
     {
         //if standalone don't notify bungee
         if (config.isStandalone())
@@ -122,43 +95,63 @@ public class BukkitNotifier implements NetworkNotifier
             return;
         }
 
-        Player p = Bukkit.getPlayer(player);
-        if (p != null)
+        boolean schedule;
+        synchronized (this)
         {
-            p.sendPluginMessage(BukkitPlugin.getInstance(), BungeePerms.CHANNEL, msg.getBytes());
-
-            //send config for match checking
-            sendConfig(p);
+            pending.add(change);
+            schedule = pending.size() == 1;
         }
-        else
+        if (schedule)
         {
-            sendPMAll(msg, origin);
+            Bukkit.getScheduler().runTaskLater(BukkitPlugin.getInstance(), flush, 1);
         }
     }
 
-    private void sendPM(UUID player, String msg, String origin)
+    @Override
+    public void sendChanges(List<NetworkChange> changes, String origin)
     {
         //if standalone don't notify bungee
-        if (config.isStandalone())
+        if (config.isStandalone() || changes.isEmpty())
         {
             return;
         }
 
-        Player p = Bukkit.getPlayer(player);
+        //any connection reaches bungee; bungee passes the changes on
+        Player p = Bukkit.getOnlinePlayers().iterator().hasNext() ? Bukkit.getOnlinePlayers().iterator().next() : null;
         if (p != null)
         {
-            p.sendPluginMessage(BukkitPlugin.getInstance(), BungeePerms.CHANNEL, msg.getBytes());
+            if (frames)
+            {
+                for (byte[] frame : NetworkChange.encode(changes))
+                {
+                    p.sendPluginMessage(BukkitPlugin.getInstance(), BungeePerms.CHANNEL, frame);
+                }
+            }
+            else
+            {
+                //the changes of a bulk edit become the same few reloads
+                Set<String> msgs = new LinkedHashSet<>();
+                for (NetworkChange c : changes)
+                {
+                    msgs.add(c.toMessage());
+                }
+                for (String msg : msgs)
+                {
+                    p.sendPluginMessage(BukkitPlugin.getInstance(), BungeePerms.CHANNEL, msg.getBytes());
+                }
+            }
 
             //send config for match checking
             sendConfig(p);
         }
-        else
-        {
-            sendPMAll(msg, origin);
-        }
     }
 
-    private void sendPMAll(String msg, String origin)
+    /**
+     * Tells bungee that this server reads frames. Bungee answers with the same message if it reads them too.
+     *
+     * @param p the player whose connection is used
+     */
+    public void sendFrameSupport(Player p)
     {
         //if standalone don't notify bungee
         if (config.isStandalone())
@@ -166,14 +159,15 @@ public class BukkitNotifier implements NetworkNotifier
             return;
         }
 
-        Player p = Bukkit.getOnlinePlayers().iterator().hasNext() ? Bukkit.getOnlinePlayers().iterator().next() : null;
-        if (p != null)
-        {
-            p.sendPluginMessage(BukkitPlugin.getInstance(), BungeePerms.CHANNEL, msg.getBytes());//todo use utf8 encoding
+        p.sendPluginMessage(BukkitPlugin.getInstance(), BungeePerms.CHANNEL, NetworkChange.announcement().getBytes());
+    }
 
-            //send config for match checking
-            sendConfig(p);
-        }
+    /**
+     * Sends the changes in frames from now on.
+     */
+    public void enableFrames()
+    {
+        frames = true;
     }
 
     public void sendWorldUpdate(Player p)
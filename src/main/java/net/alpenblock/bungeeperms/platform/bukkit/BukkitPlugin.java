@@ -287,4 +287,10 @@ public class BukkitPlugin extends JavaPlugin implements PlatformPlugin
     {
         getServer().getScheduler().cancelTask(id);
     }
+
+    @Override
+    public boolean isMainThread()
+    {
+        return getServer().isPrimaryThread();
+    }
 }
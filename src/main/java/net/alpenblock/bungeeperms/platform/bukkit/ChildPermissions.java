@@ -0,0 +1,282 @@
+package net.alpenblock.bungeeperms.platform.bukkit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import net.alpenblock.bungeeperms.BungeePerms;
+import net.alpenblock.bungeeperms.Statics;
+import org.bukkit.Bukkit;
+import org.bukkit.permissions.Permission;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimplePluginManager;
+
+/**
+ * Cache of the flattened child trees of the registered bukkit permissions.
+ * <p>
+ * The children of a permission are listed depth first, each child followed by its own children, as lower case
+ * permissions with a leading "-" if they are negated. The cache is dropped whenever a permission is registered or
+ * unregistered or the children of a registered permission change; the version tells users of the cache that they
+ * have to rebuild their own copies.
+ * <p>
+ * The changes are seen by {@link #watch()}, which wraps the permission registry of the plugin manager and the child
+ * maps of the registered permissions. If that fails, the cache is only dropped when a plugin is enabled or disabled.
+ */
+public class ChildPermissions
+{
+
+    private static final Children NONE = new Children(new String[0], new String[0]);
+
+    private static volatile ConcurrentHashMap<String, Children> cache = new ConcurrentHashMap<>();
+    @Getter
+    private static volatile int version;
+    //guarded by the class lock
+    private static WatchedRegistry registry;
+
+    /**
+     * Gets the flattened children of a permission.
+     *
+     * @param perm the permission without leading "-"
+     * @return the children; empty if the permission is not registered or has no children
+     */
+    public static Children get(String perm)
+    {
+        String lower = perm.toLowerCase();
+        ConcurrentHashMap<String, Children> map = cache;
+        Children children = map.get(lower);
+        return children != null ? children : get(map, lower, new HashSet<String>());
+    }
+
+    /**
+     * Starts watching the permission registry for changes.
+     */
+    public static synchronized void watch()
+    {
+        PluginManager pm = Bukkit.getPluginManager();
+        if (registry != null || !(pm instanceof SimplePluginManager))
+        {
+            return;
+        }
+
+        Map<String, Permission> perms = Statics.getField(SimplePluginManager.class, pm, Map.class, "permissions");
+        if (perms == null)
+        {
+            return;
+        }
+        WatchedRegistry watched = new WatchedRegistry(perms);
+        Statics.setField(SimplePluginManager.class, pm, watched, "permissions");
+        if (Statics.getField(SimplePluginManager.class, pm, Map.class, "permissions") != watched)
+        {
+            BungeePerms.getInstance().getDebug().log("could not watch the permission registry");
+            return;
+        }
+        registry = watched;
+        invalidate();
+    }
+
+    /**
+     * Stops watching the permission registry and puts back plain maps.
+     */
+    public static synchronized void unwatch()
+    {
+        if (registry == null)
+        {
+            return;
+        }
+
+        PluginManager pm = Bukkit.getPluginManager();
+        Map<String, Permission> perms = new HashMap<>();
+        for (Map.Entry<String, Permission> e : registry.entrySet())
+        {
+            unwatch(e.getValue());
+            perms.put(e.getKey(), e.getValue());
+        }
+        if (Statics.getField(SimplePluginManager.class, pm, Map.class, "permissions") == registry)
+        {
+            Statics.setField(SimplePluginManager.class, pm, perms, "permissions");
+        }
+        registry = null;
+    }
+
+    /**
+     * Drops the cache.
+     */
+    public static void invalidate()
+    {
+        cache = new ConcurrentHashMap<>();
+        version++;
+    }
+
+    //entries are put into the map they were read from, so entries computed during an invalidation are dropped too
+    private static Children get(ConcurrentHashMap<String, Children> map, String perm, Set<String> visiting)
+    {
+        Children children = map.get(perm);
+        if (children != null)
+        {
+            return children;
+        }
+
+        Permission p = Bukkit.getPluginManager().getPermission(perm);
+        if (p == null || p.getChildren().isEmpty())
+        {
+            map.put(perm, NONE);
+            return NONE;
+        }
+
+        //a permission which (indirectly) contains itself ends here
+        if (!visiting.add(perm))
+        {
+            return NONE;
+        }
+
+        List<String> perms = new ArrayList<>();
+        List<String> parents = new ArrayList<>();
+        for (Map.Entry<String, Boolean> e : p.getChildren().entrySet())
+        {
+            String child = e.getKey().toLowerCase();
+            perms.add((e.getValue() ? "" : "-") + child);
+            parents.add(perm);
+
+            Children sub = get(map, child, visiting);
+            for (int i = 0; i < sub.perms.length; i++)
+            {
+                perms.add(sub.perms[i]);
+                parents.add(sub.parents[i]);
+            }
+        }
+        visiting.remove(perm);
+
+        children = new Children(perms.toArray(new String[perms.size()]), parents.toArray(new String[parents.size()]));
+        map.put(perm, children);
+        return children;
+    }
+
+    private static void watch(Permission p)
+    {
+        Map<String, Boolean> children = p.getChildren();
+        if (!(children instanceof WatchedChildren))
+        {
+            Statics.setField(Permission.class, p, new WatchedChildren(children), "children");
+        }
+    }
+
+    private static void unwatch(Permission p)
+    {
+        Map<String, Boolean> children = p.getChildren();
+        if (children instanceof WatchedChildren)
+        {
+            Statics.setField(Permission.class, p, new LinkedHashMap<>(children), "children");
+        }
+    }
+
+    //the registry of the plugin manager; bukkit only uses get, put, remove and the views
+    private static class WatchedRegistry extends HashMap<String, Permission>
+    {
+
+        private WatchedRegistry(Map<String, Permission> perms)
+        {
+            for (Map.Entry<String, Permission> e : perms.entrySet())
+            {
+                put(e.getKey(), e.getValue());
+            }
+        }
+
+        @Override
+        public Permission put(String key, Permission value)
+        {
+            if (value != null)
+            {
+                watch(value);
+            }
+            Permission old = super.put(key, value);
+            invalidate();
+            return old;
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Permission> m)
+        {
+            for (Map.Entry<? extends String, ? extends Permission> e : m.entrySet())
+            {
+                put(e.getKey(), e.getValue());
+            }
+        }
+
+        @Override
+        public Permission remove(Object key)
+        {
+            Permission old = super.remove(key);
+            invalidate();
+            return old;
+        }
+
+        @Override
+        public void clear()
+        {
+            super.clear();
+            invalidate();
+        }
+    }
+
+    //the children of a registered permission
+    private static class WatchedChildren extends LinkedHashMap<String, Boolean>
+    {
+
+        private WatchedChildren(Map<String, Boolean> children)
+        {
+            super(children);
+        }
+
+        @Override
+        public Boolean put(String key, Boolean value)
+        {
+            Boolean old = super.put(key, value);
+            invalidate();
+            return old;
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Boolean> m)
+        {
+            super.putAll(m);
+            invalidate();
+        }
+
+        @Override
+        public Boolean remove(Object key)
+        {
+            Boolean old = super.remove(key);
+            invalidate();
+            return old;
+        }
+
+        @Override
+        public void clear()
+        {
+            super.clear();
+            invalidate();
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Children
+    {
+
+        //the children
+        private final String[] perms;
+        //the permission which directly contains the child at the same index
+        private final String[] parents;
+
+        public int size()
+        {
+            return perms.length;
+        }
+    }
+}
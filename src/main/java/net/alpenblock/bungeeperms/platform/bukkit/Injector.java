@@ -1,7 +1,9 @@
 package net.alpenblock.bungeeperms.platform.bukkit;
 
 import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
 import net.alpenblock.bungeeperms.BungeePerms;
+import net.alpenblock.bungeeperms.Statics;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
@@ -11,6 +13,10 @@ import org.bukkit.permissions.Permissible;
 public class Injector
 {
 
+    //craftbukkit class name -> perm field
+    private static final ConcurrentHashMap<String, Field> permFields = new ConcurrentHashMap<>();
+    private static volatile String craftPackage;
+
     public static void inject(CommandSender sender, Permissible newpermissible)
     {
         try
@@ -20,7 +26,6 @@ public class Injector
             {
                 return;
             }
-            perm.setAccessible(true);
             perm.set(sender, newpermissible);
         }
         catch (Exception e)
@@ -48,7 +53,6 @@ public class Injector
             {
                 return null;
             }
-            perm.setAccessible(true);
             Permissible permissible = (Permissible) perm.get(sender);
 
             return permissible;
@@ -62,17 +66,30 @@ public class Injector
 
     private static Field getPermField(CommandSender sender)
     {
-        Field perm = null;
+        String classname;
+        if (sender instanceof Player)
+        {
+            classname = "entity.CraftHumanEntity";
+        }
+        else if (sender instanceof ConsoleCommandSender)
+        {
+            classname = "command.ServerCommandSender";
+        }
+        else
+        {
+            return null;
+        }
+
+        //the field is resolved once; permission checks only do the map lookup
+        Field perm = permFields.get(classname);
+        if (perm != null)
+        {
+            return perm;
+        }
         try
         {
-            if (sender instanceof Player)
-            {
-                perm = Class.forName(getVersionedClassName("entity.CraftHumanEntity")).getDeclaredField("perm");
-            }
-            else if (sender instanceof ConsoleCommandSender)
-            {
-                perm = Class.forName(getVersionedClassName("command.ServerCommandSender")).getDeclaredField("perm");
-            }
+            perm = Statics.getDeclaredField(Class.forName(getVersionedClassName(classname)), "perm");
+            permFields.put(classname, perm);
         }
         catch (Exception e)
         {
@@ -82,6 +99,21 @@ public class Injector
     }
 
     private static String getVersionedClassName(String classname)
+    {
+        String pkg = craftPackage;
+        if (pkg == null)
+        {
+            pkg = getCraftPackage();
+            if (pkg == null)
+            {
+                return null;
+            }
+            craftPackage = pkg;
+        }
+        return pkg + classname;
+    }
+
+    private static String getCraftPackage()
     {
         String version;
 
@@ -100,6 +132,6 @@ public class Injector
             version = version.substring(0, version.length() - "CraftServer".length());
         }
 
-        return "org.bukkit.craftbukkit" + version + classname;
+        return "org.bukkit.craftbukkit" + version;
     }
 }
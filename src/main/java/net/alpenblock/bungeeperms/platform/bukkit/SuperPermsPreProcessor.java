@@ -1,18 +1,15 @@
 package net.alpenblock.bungeeperms.platform.bukkit;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import net.alpenblock.bungeeperms.BPPermission;
 import net.alpenblock.bungeeperms.BungeePerms;
 import net.alpenblock.bungeeperms.PermissionsPreProcessor;
 import net.alpenblock.bungeeperms.platform.Sender;
-import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.permissions.Permissible;
-import org.bukkit.permissions.Permission;
-import org.bukkit.permissions.PermissionAttachmentInfo;
 
 public class SuperPermsPreProcessor implements PermissionsPreProcessor
 {
@@ -26,68 +23,39 @@ public class SuperPermsPreProcessor implements PermissionsPreProcessor
             return perms;
         }
 
-        if (s != null)
+        //superperms and their children, then the given perms each followed by their children
+        ChildPermissions.Children superperms = s != null ? getSuperPerms(s) : null;
+        List<String> result = new ArrayList<>((superperms != null ? superperms.size() : 0) + perms.size() * 2);
+        if (superperms != null)
         {
-            perms.addAll(0, getSuperPerms(s));
+            result.addAll(Arrays.asList(superperms.getPerms()));
+        }
+        for (String perm : perms)
+        {
+            result.add(perm);
+            result.addAll(Arrays.asList(ChildPermissions.get(perm.startsWith("-") ? perm.substring(1) : perm).getPerms()));
         }
 
-        //expand permissions
-        expandChildPerms(perms);
-
-        return perms;
+        return result;
     }
 
-    private List<String> getSuperPerms(Sender s)
+    private ChildPermissions.Children getSuperPerms(Sender s)
     {
         BukkitSender bs = (BukkitSender) s;
         CommandSender sender = bs.getSender();
         if (!(sender instanceof Player))
         {
-            return new ArrayList();
+            return null;
         }
 
         Player p = (Player) sender;
         Permissible base = Injector.getPermissible(p);
         if (!(base instanceof BPPermissible))
         {
-            return new ArrayList();
-        }
-
-        BPPermissible perm = (BPPermissible) base;
-        List<String> l = new ArrayList(perm.getEffectiveSuperPerms().size());
-        for (PermissionAttachmentInfo e : perm.getEffectiveSuperPerms())
-        {
-            l.add((e.getValue() ? "" : "-") + e.getPermission().toLowerCase());
-        }
-        return l;
-    }
-
-    private List<String> expandChildPerms(List<String> perms)
-    {
-        for (int i = 0; i < perms.size(); i++)
-        {
-            //get perm info
-            String perm = perms.get(i);
-            boolean neg = perm.startsWith("-");
-            perm = neg ? perm.substring(1) : perm;
-
-            //check perm
-            Permission p = Bukkit.getPluginManager().getPermission(perm);
-            if (p == null || p.getChildren().isEmpty())
-            {
-                continue;
-            }
-
-            //add all children
-            List<String> l = new ArrayList();
-            for (Map.Entry<String, Boolean> e : p.getChildren().entrySet())
-            {
-                l.add((e.getValue() ? "" : "-") + e.getKey().toLowerCase());
-            }
-            perms.addAll(i + 1, l);
+            return null;
         }
 
-        return perms;
+        return ((BPPermissible) base).getExpandedSuperPerms();
     }
 
     @Override
@@ -99,46 +67,27 @@ public class SuperPermsPreProcessor implements PermissionsPreProcessor
             return perms;
         }
 
-        if (s != null)
+        List<BPPermission> result = new ArrayList<>();
+        ChildPermissions.Children superperms = s != null ? getSuperPerms(s) : null;
+        if (superperms != null)
         {
-            List<String> l = getSuperPerms(s);
-            for (int i = 0; i < l.size(); i++)
+            for (int i = 0; i < superperms.size(); i++)
             {
-                perms.add(i, new BPPermission(l.get(i), "SuperPerms", true, null, null));
+                String parent = superperms.getParents()[i];
+                result.add(new BPPermission(superperms.getPerms()[i], parent == null ? "SuperPerms" : "SuperPerms child of " + parent, true, null, null));
             }
         }
-
-        //expand permissions
-        expandChildPermsWithOrigin(perms);
-
-        return perms;
-    }
-
-    private List<BPPermission> expandChildPermsWithOrigin(List<BPPermission> perms)
-    {
-        for (int i = 0; i < perms.size(); i++)
+        for (BPPermission perm : perms)
         {
-            //get perm info
-            String perm = perms.get(i).getPermission();
-            boolean neg = perm.startsWith("-");
-            perm = neg ? perm.substring(1) : perm;
-
-            //check perm
-            Permission p = Bukkit.getPluginManager().getPermission(perm);
-            if (p == null || p.getChildren().isEmpty())
-            {
-                continue;
-            }
-
-            //add all children
-            List<BPPermission> l = new ArrayList();
-            for (Map.Entry<String, Boolean> e : p.getChildren().entrySet())
+            result.add(perm);
+            String p = perm.getPermission();
+            ChildPermissions.Children children = ChildPermissions.get(p.startsWith("-") ? p.substring(1) : p);
+            for (int i = 0; i < children.size(); i++)
             {
-                l.add(new BPPermission((e.getValue() ? "" : "-") + e.getKey().toLowerCase(), "SuperPerms child of " + perm, true, null, null));
+                result.add(new BPPermission(children.getPerms()[i], "SuperPerms child of " + children.getParents()[i], true, null, null));
             }
-            perms.addAll(i + 1, l);
         }
 
-        return perms;
+        return result;
     }
 }
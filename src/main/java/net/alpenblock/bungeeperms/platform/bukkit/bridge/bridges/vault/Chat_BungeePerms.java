@@ -88,7 +88,7 @@ public class Chat_BungeePerms extends Chat
     @Override
     public String getPlayerPrefix(String world, String player)
     {
-        User u = perms.getPermissionsManager().getUser(player);
+        User u = perms.getPermissionsManager().getOfflineLookup().getUser(player);
         return u == null ? "" : u.buildPrefix();
     }
 
@@ -97,7 +97,7 @@ public class Chat_BungeePerms extends Chat
     {
         prefix = prefix.replaceAll("&", ChatColor.COLOR_CHAR + "");
 
-        User u = perms.getPermissionsManager().getUser(player);
+        User u = perms.getPermissionsManager().getOfflineLookup().loadUser(player);
         if (u == null)
         {
             return;
@@ -110,7 +110,7 @@ public class Chat_BungeePerms extends Chat
     @Override
     public String getPlayerSuffix(String world, String player)
     {
-        User u = perms.getPermissionsManager().getUser(player);
+        User u = perms.getPermissionsManager().getOfflineLookup().getUser(player);
         return u == null ? "" : u.buildSuffix();
     }
 
@@ -119,7 +119,7 @@ public class Chat_BungeePerms extends Chat
     {
         suffix = suffix.replaceAll("&", ChatColor.COLOR_CHAR + "");
 
-        User u = perms.getPermissionsManager().getUser(player);
+        User u = perms.getPermissionsManager().getOfflineLookup().loadUser(player);
         if (u == null)
         {
             return;
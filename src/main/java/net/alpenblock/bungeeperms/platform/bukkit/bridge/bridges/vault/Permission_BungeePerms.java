@@ -96,7 +96,14 @@ public class Permission_BungeePerms extends Permission
         String server = Statics.toLower(((BukkitConfig) BungeePerms.getInstance().getConfig()).getServername());
         world = Statics.toLower(world);
         permission = Statics.toLower(permission);
-        return BungeePerms.getInstance().getPermissionsChecker().hasPermOnServerInWorld(player, permission, server, world);
+
+        //offline players are looked up without blocking the main thread
+        User u = BungeePerms.getInstance().getPermissionsManager().getOfflineLookup().getUser(player);
+        if (u == null)
+        {
+            return false;
+        }
+        return world == null ? u.hasPermOnServer(permission, server) : u.hasPermOnServerInWorld(permission, server, world);
     }
 
     @Override
@@ -105,7 +112,7 @@ public class Permission_BungeePerms extends Permission
         String server = Statics.toLower(((BukkitConfig) BungeePerms.getInstance().getConfig()).getServername());
         world = Statics.toLower(world);
         permission = Statics.toLower(permission);
-        User u = BungeePerms.getInstance().getPermissionsManager().getUser(player);
+        User u = BungeePerms.getInstance().getPermissionsManager().getOfflineLookup().loadUser(player);
         if (u == null)
         {
             return false;
@@ -129,7 +136,7 @@ public class Permission_BungeePerms extends Permission
         String server = Statics.toLower(((BukkitConfig) BungeePerms.getInstance().getConfig()).getServername());
         world = Statics.toLower(world);
         permission = Statics.toLower(permission);
-        User u = BungeePerms.getInstance().getPermissionsManager().getUser(player);
+        User u = BungeePerms.getInstance().getPermissionsManager().getOfflineLookup().loadUser(player);
         if (u == null)
         {
             return false;
@@ -213,7 +220,7 @@ public class Permission_BungeePerms extends Permission
     @Override
     public boolean playerInGroup(String world, String player, String group)
     {
-        User u = BungeePerms.getInstance().getPermissionsManager().getUser(player);
+        User u = BungeePerms.getInstance().getPermissionsManager().getOfflineLookup().getUser(player);
         if (u == null)
         {
             return false;
@@ -231,7 +238,7 @@ public class Permission_BungeePerms extends Permission
     @Override
     public boolean playerAddGroup(String world, String player, String group)
     {
-        User u = BungeePerms.getInstance().getPermissionsManager().getUser(player);
+        User u = BungeePerms.getInstance().getPermissionsManager().getOfflineLookup().loadUser(player);
         if (u == null)
         {
             return false;
@@ -255,7 +262,7 @@ public class Permission_BungeePerms extends Permission
     @Override
     public boolean playerRemoveGroup(String world, String player, String group)
     {
-        User u = BungeePerms.getInstance().getPermissionsManager().getUser(player);
+        User u = BungeePerms.getInstance().getPermissionsManager().getOfflineLookup().loadUser(player);
         if (u == null)
         {
             return false;
@@ -279,7 +286,7 @@ public class Permission_BungeePerms extends Permission
     @Override
     public String[] getPlayerGroups(String world, String player)
     {
-        User u = BungeePerms.getInstance().getPermissionsManager().getUser(player);
+        User u = BungeePerms.getInstance().getPermissionsManager().getOfflineLookup().getUser(player);
         if (u == null)
         {
             return new String[0];
@@ -291,7 +298,7 @@ public class Permission_BungeePerms extends Permission
     @Override
     public String getPrimaryGroup(String world, String player)
     {
-        User u = BungeePerms.getInstance().getPermissionsManager().getUser(player);
+        User u = BungeePerms.getInstance().getPermissionsManager().getOfflineLookup().getUser(player);
         if (u == null)
         {
             return null;
@@ -43,15 +43,29 @@ public class BungeePermsResolver implements PermissionsResolver
     @Override
     public boolean hasPermission(String player, String permission)
     {
+        User user = manager.getOfflineLookup().getUser(player);
+        if (user == null)
+        {
+            return false;
+        }
+
         BukkitConfig config = (BukkitConfig) BungeePerms.getInstance().getConfig();
-        return BungeePerms.getInstance().getPermissionsChecker().hasPermOnServer(player, Statics.toLower(permission), Statics.toLower(config.getServername()));
+        return user.hasPermOnServer(Statics.toLower(permission), Statics.toLower(config.getServername()));
     }
 
     @Override
     public boolean hasPermission(String worldName, String name, String permission)
     {
+        User user = manager.getOfflineLookup().getUser(name);
+        if (user == null)
+        {
+            return false;
+        }
+
         BukkitConfig config = (BukkitConfig) BungeePerms.getInstance().getConfig();
-        return BungeePerms.getInstance().getPermissionsChecker().hasPermOnServerInWorld(name, Statics.toLower(permission), Statics.toLower(config.getServername()), Statics.toLower(worldName));
+        String server = Statics.toLower(config.getServername());
+        return worldName == null ? user.hasPermOnServer(Statics.toLower(permission), server)
+                : user.hasPermOnServerInWorld(Statics.toLower(permission), server, Statics.toLower(worldName));
     }
 
     @Override
@@ -69,7 +83,12 @@ public class BungeePermsResolver implements PermissionsResolver
     @Override
     public boolean inGroup(String player, String group)
     {
-        return manager.getUser(player).getGroups().contains(BungeePerms.getInstance().getPermissionsManager().getGroup(group));
+        User user = manager.getOfflineLookup().getUser(player);
+        if (user == null)
+        {
+            return false;
+        }
+        return user.getGroups().contains(manager.getGroup(group));
     }
 
     @Override
@@ -81,7 +100,7 @@ public class BungeePermsResolver implements PermissionsResolver
     @Override
     public String[] getGroups(String player)
     {
-        User user = manager.getUser(player);
+        User user = manager.getOfflineLookup().getUser(player);
         if (user == null)
         {
             return new String[0];
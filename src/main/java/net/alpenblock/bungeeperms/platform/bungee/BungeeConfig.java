@@ -13,6 +13,11 @@ public class BungeeConfig extends BPConfig
 
     private NetworkType networkType;
     private List<String> networkServers;
+
+    //async login
+    private int loginThreads;
+    private int loginQueueSize;
+    private int loginTimeout;
     
     public BungeeConfig(Config config)
     {
@@ -37,5 +42,9 @@ public class BungeeConfig extends BPConfig
                 config.setListString("networkservers", new ArrayList<String>());
             }
         }
+
+        loginThreads = config.getInt("login.threads", 4);
+        loginQueueSize = config.getInt("login.queuesize", 1000);
+        loginTimeout = config.getInt("login.timeout", 5000);
     }
 }
@@ -1,5 +1,7 @@
 package net.alpenblock.bungeeperms.platform.bungee;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import net.alpenblock.bungeeperms.Group;
 import net.alpenblock.bungeeperms.User;
 import net.alpenblock.bungeeperms.platform.EventDispatcher;
@@ -7,26 +9,41 @@ import net.alpenblock.bungeeperms.platform.bungee.event.BungeePermsGroupChangedE
 import net.alpenblock.bungeeperms.platform.bungee.event.BungeePermsReloadedEvent;
 import net.alpenblock.bungeeperms.platform.bungee.event.BungeePermsUserChangedEvent;
 import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.plugin.Event;
 
 public class BungeeEventDispatcher implements EventDispatcher
 {
 
     @Override
-    public void dispatchReloadedEvent()
+    public Future<?> dispatchReloadedEvent()
     {
-        ProxyServer.getInstance().getPluginManager().callEvent(new BungeePermsReloadedEvent());
+        return callEvent(new BungeePermsReloadedEvent());
     }
 
     @Override
-    public void dispatchGroupChangeEvent(Group g)
+    public Future<?> dispatchGroupChangeEvent(Group g)
     {
-        ProxyServer.getInstance().getPluginManager().callEvent(new BungeePermsGroupChangedEvent(g));
+        return callEvent(new BungeePermsGroupChangedEvent(g));
     }
 
     @Override
-    public void dispatchUserChangeEvent(User u)
+    public Future<?> dispatchUserChangeEvent(User u)
     {
-        ProxyServer.getInstance().getPluginManager().callEvent(new BungeePermsUserChangedEvent(u));
+        return callEvent(new BungeePermsUserChangedEvent(u));
     }
 
+    //bungee events can be fired from any thread; the returned future is already done
+    private static Future<?> callEvent(final Event e)
+    {
+        FutureTask<Void> task = new FutureTask<>(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ProxyServer.getInstance().getPluginManager().callEvent(e);
+            }
+        }, null);
+        task.run();
+        return task;
+    }
 }
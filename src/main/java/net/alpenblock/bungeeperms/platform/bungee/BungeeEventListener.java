@@ -1,14 +1,16 @@
 package net.alpenblock.bungeeperms.platform.bungee;
 
 import net.alpenblock.bungeeperms.BungeePerms;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.Getter;
+import net.alpenblock.bungeeperms.Context;
 import net.alpenblock.bungeeperms.Group;
 import net.alpenblock.bungeeperms.Lang;
+import net.alpenblock.bungeeperms.NetworkChange;
 import net.alpenblock.bungeeperms.PermissionsManager;
 import net.alpenblock.bungeeperms.Statics;
 import net.alpenblock.bungeeperms.User;
@@ -25,17 +27,54 @@ import net.md_5.bungee.api.event.PluginMessageEvent;
 import net.md_5.bungee.api.event.ServerConnectedEvent;
 import net.md_5.bungee.api.event.TabCompleteEvent;
 import net.md_5.bungee.api.plugin.Listener;
+import net.md_5.bungee.api.scheduler.ScheduledTask;
 import net.md_5.bungee.event.EventHandler;
 
 public class BungeeEventListener implements Listener, EventListener
 {
 
+    //delays between the loads of a user whose load failed; doubled each time
+    private static final long RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60000;
+
     @Getter
-    private final Map<String, String> playerWorlds = new HashMap<>();
+    private final PlayerContextStore playerContexts = new PlayerContextStore();
 
     private boolean enabled = false;
 
     private final BungeeConfig config;
+    @Getter
+    private BungeeUserLoader loader;
+
+    //calculates the permissions of the new server and world before the first permission check needs them
+    //runs next to the permission checks; the permission caches of the users are concurrent maps for that
+    private final PlayerContextStore.ContextListener prewarmer = new PlayerContextStore.ContextListener()
+    {
+        @Override
+        public void contextChanged(UUID uuid, final Context context)
+        {
+            ProxiedPlayer pp = ProxyServer.getInstance().getPlayer(uuid);
+            if (pp == null)
+            {
+                return;
+            }
+            final User u = config.isUseUUIDs() ? pm().getUser(uuid, false) : pm().getUser(pp.getName(), false);
+            if (u == null)
+            {
+                return;
+            }
+
+            Runnable r = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    u.getCompiledPerms(context.getServer(), context.getWorld());
+                }
+            };
+            ProxyServer.getInstance().getScheduler().runAsync(BungeePlugin.getInstance(), r);
+        }
+    };
 
     public BungeeEventListener(BungeeConfig config)
     {
@@ -50,6 +89,8 @@ public class BungeeEventListener implements Listener, EventListener
             return;
         }
         enabled = true;
+        loader = new BungeeUserLoader(config.getLoginThreads(), config.getLoginQueueSize());
+        playerContexts.addListener(prewarmer);
         ProxyServer.getInstance().getPluginManager().registerListener(BungeePlugin.getInstance(), this);
     }
 
@@ -62,10 +103,12 @@ public class BungeeEventListener implements Listener, EventListener
         }
         enabled = false;
         ProxyServer.getInstance().getPluginManager().unregisterListener(this);
+        playerContexts.removeListener(prewarmer);
+        loader.shutdown();
     }
 
     @EventHandler(priority = Byte.MIN_VALUE + 1)
-    public void onLogin(LoginEvent e)
+    public void onLogin(final LoginEvent e)
     {
         //don't load if cancelled
         if (e.isCancelled())
@@ -73,15 +116,11 @@ public class BungeeEventListener implements Listener, EventListener
             return;
         }
 
-        String playername = e.getConnection().getName();
-        UUID uuid = null;
+        final String playername = e.getConnection().getName();
+        final UUID uuid = config.isUseUUIDs() ? e.getConnection().getUniqueId() : null;
         if (config.isUseUUIDs())
         {
-            uuid = e.getConnection().getUniqueId();
             BungeePerms.getLogger().info(Lang.translate(Lang.MessageType.LOGIN_UUID, playername, uuid));
-
-            //update uuid player db
-            pm().getUUIDPlayerDB().update(uuid, playername);
         }
         else
         {
@@ -95,23 +134,148 @@ public class BungeeEventListener implements Listener, EventListener
             pm().removeUserFromCache(oldu);
         }
 
-        //load user from db
-        User u = config.isUseUUIDs() ? pm().getUser(uuid) : pm().getUser(playername);
-        if (u == null)
+        //load user from db on the loader threads; the login waits for the intent
+        final long start = System.currentTimeMillis();
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        e.registerIntent(BungeePlugin.getInstance());
+
+        Runnable timeout = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (!completed.compareAndSet(false, true))
+                {
+                    return;
+                }
+
+                //let the player in with the default groups; the loaded user replaces them later
+                loader.timeout();
+                BungeePerms.getInstance().getDebug().log("login of " + playername + " timed out after " + config.getLoginTimeout() + "ms");
+                pm().createPlaceholderUser(playername, uuid);
+                e.completeIntent(BungeePlugin.getInstance());
+            }
+        };
+        final ScheduledTask timeouttask = ProxyServer.getInstance().getScheduler().schedule(BungeePlugin.getInstance(), timeout, config.getLoginTimeout(), TimeUnit.MILLISECONDS);
+
+        loader.load(playername, uuid, new BungeeUserLoader.Callback()
         {
-            //create user and add default groups
-            if (config.isUseUUIDs())
+            @Override
+            public void loaded(User u)
             {
-                BungeePerms.getLogger().info(Lang.translate(Lang.MessageType.ADDING_DEFAULT_GROUPS_UUID, playername, uuid));
+                timeouttask.cancel();
+                if (completed.compareAndSet(false, true))
+                {
+                    cacheLoginUser(u, playername, uuid);
+                    e.completeIntent(BungeePlugin.getInstance());
+                }
+                else
+                {
+                    replaceTimedOutUser(u, playername, uuid);
+                }
+
+                if (config.isDebug())
+                {
+                    BungeePerms.getLogger().info("login of " + playername + " loaded in " + (System.currentTimeMillis() - start) + "ms"
+                            + " (loader queue " + loader.getQueueDepth() + ", avg load " + String.format("%.1f", loader.getAverageLoadTime()) + "ms)");
+                }
             }
-            else
+
+            @Override
+            public void failed(Exception ex)
             {
-                BungeePerms.getLogger().info(Lang.translate(Lang.MessageType.ADDING_DEFAULT_GROUPS, playername));
+                timeouttask.cancel();
+
+                //the user might exist; never save the default user over it
+                BungeePerms.getLogger().warning(Lang.translate(Lang.MessageType.LOGIN_LOAD_FAILED, playername));
+                if (completed.compareAndSet(false, true))
+                {
+                    pm().createPlaceholderUser(playername, uuid);
+                    e.completeIntent(BungeePlugin.getInstance());
+                }
+                retryLoad(playername, uuid, RETRY_DELAY);
             }
+        });
+    }
 
-            u = pm().createTempUser(playername, uuid);
-            pm().getBackEnd().saveUser(u, true);
+    private void cacheLoginUser(User u, String playername, UUID uuid)
+    {
+        if (u != null)
+        {
+            pm().addUserToCacheIfAbsent(u);
+            return;
         }
+
+        //create user and add default groups
+        if (config.isUseUUIDs())
+        {
+            BungeePerms.getLogger().info(Lang.translate(Lang.MessageType.ADDING_DEFAULT_GROUPS_UUID, playername, uuid));
+        }
+        else
+        {
+            BungeePerms.getLogger().info(Lang.translate(Lang.MessageType.ADDING_DEFAULT_GROUPS, playername));
+        }
+
+        u = pm().createTempUser(playername, uuid);
+        pm().getBackEnd().saveUser(u, true);
+    }
+
+    private void replaceTimedOutUser(User u, String playername, UUID uuid)
+    {
+        //the player left meanwhile or a change loaded the user already; that one is newer
+        User temp = config.isUseUUIDs() ? pm().getUser(uuid, false) : pm().getUser(playername, false);
+        if (temp == null || !temp.isPlaceholder())
+        {
+            return;
+        }
+
+        //saves the default user if the player is new
+        u = pm().replacePlaceholder(temp, u);
+        if (u == null)
+        {
+            return;
+        }
+
+        //call event
+        BungeePerms.getInstance().getEventDispatcher().dispatchUserChangeEvent(u);
+    }
+
+    //loads the user of a placeholder again until it is loaded or the player leaves
+    private void retryLoad(final String playername, final UUID uuid, final long delay)
+    {
+        Runnable r = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (!enabled)
+                {
+                    return;
+                }
+                ProxiedPlayer pp = uuid != null ? ProxyServer.getInstance().getPlayer(uuid) : ProxyServer.getInstance().getPlayer(playername);
+                User temp = config.isUseUUIDs() ? pm().getUser(uuid, false) : pm().getUser(playername, false);
+                if (pp == null || temp == null || !temp.isPlaceholder())
+                {
+                    return;
+                }
+
+                loader.load(playername, uuid, new BungeeUserLoader.Callback()
+                {
+                    @Override
+                    public void loaded(User u)
+                    {
+                        replaceTimedOutUser(u, playername, uuid);
+                    }
+
+                    @Override
+                    public void failed(Exception ex)
+                    {
+                        retryLoad(playername, uuid, Math.min(delay * 2, MAX_RETRY_DELAY));
+                    }
+                });
+            }
+        };
+        ProxyServer.getInstance().getScheduler().schedule(BungeePlugin.getInstance(), r, delay, TimeUnit.MILLISECONDS);
     }
 
     @EventHandler(priority = Byte.MAX_VALUE)
@@ -120,8 +284,14 @@ public class BungeeEventListener implements Listener, EventListener
         String playername = e.getPlayer().getName();
         UUID uuid = e.getPlayer().getUniqueId();
 
-        User u = config.isUseUUIDs() ? pm().getUser(uuid) : pm().getUser(playername);
-        pm().removeUserFromCache(u);
+        playerContexts.remove(uuid);
+
+        //do not load the user just to remove it
+        User u = config.isUseUUIDs() ? pm().getUser(uuid, false) : pm().getUser(playername, false);
+        if (u != null)
+        {
+            pm().removeUserFromCache(u);
+        }
     }
 
     @EventHandler(priority = Byte.MIN_VALUE)
@@ -154,7 +324,7 @@ public class BungeeEventListener implements Listener, EventListener
     public void onServerConnected(final ServerConnectedEvent e)
     {
         //plugin messages will arrive later because plugin channels are not registered at this very moment
-        playerWorlds.put(e.getPlayer().getName(), null);
+        playerContexts.set(e.getPlayer().getUniqueId(), e.getServer().getInfo().getName(), null);
 
         //send delayed uuid message to bukkit
         if (config.isUseUUIDs())
@@ -215,6 +385,14 @@ public class BungeeEventListener implements Listener, EventListener
             return;
         }
 
+        //changes made on the server
+        if (NetworkChange.isFrame(e.getData()))
+        {
+            applyChanges(e.getData(), scon.getInfo().getName());
+            e.setCancelled(true);
+            return;
+        }
+
         //process message
         String msg = new String(e.getData());
         if (config.isDebug())
@@ -230,7 +408,16 @@ public class BungeeEventListener implements Listener, EventListener
         {
             String world = data.get(2);
 
-            playerWorlds.put(userorgroup, world);
+            //ignore players who left meanwhile
+            ProxiedPlayer pp = ProxyServer.getInstance().getPlayer(userorgroup);
+            if (pp != null)
+            {
+                playerContexts.set(pp.getUniqueId(), scon.getInfo().getName(), world);
+                if (ProxyServer.getInstance().getPlayer(pp.getUniqueId()) == null)
+                {
+                    playerContexts.remove(pp.getUniqueId());
+                }
+            }
         }
         else if (cmd.equalsIgnoreCase("deleteuser"))
         {
@@ -244,14 +431,7 @@ public class BungeeEventListener implements Listener, EventListener
         {
             Group g = pm().getGroup(userorgroup);
             pm().removeGroupFromCache(g);
-            for (Group gr : pm().getGroups())
-            {
-                gr.recalcPerms();
-            }
-            for (User u : pm().getUsers())
-            {
-                u.recalcPerms();
-            }
+            pm().recalcGroupPerms(g);
 
             //forward plugin message to network
             BungeePerms.getInstance().getNetworkNotifier().deleteGroup(g, scon.getInfo().getName());
@@ -309,6 +489,14 @@ public class BungeeEventListener implements Listener, EventListener
             //forward plugin message to network except to server which issued the reload
             BungeePerms.getInstance().getNetworkNotifier().reloadAll(scon.getInfo().getName());
         }
+        else if (cmd.equalsIgnoreCase(NetworkChange.ANNOUNCE))
+        {
+            //the server reads frames of this version
+            if (String.valueOf(NetworkChange.VERSION).equals(userorgroup))
+            {
+                BungeePlugin.getInstance().getNotifier().addFrameServer(scon.getInfo());
+            }
+        }
         else if (cmd.equalsIgnoreCase("configcheck"))
         {
             String servername = data.get(1);
@@ -336,6 +524,54 @@ public class BungeeEventListener implements Listener, EventListener
         e.setCancelled(true);
     }
 
+    private void applyChanges(byte[] data, String origin)
+    {
+        List<NetworkChange> changes;
+        try
+        {
+            changes = NetworkChange.decode(data);
+        }
+        catch (IOException ex)
+        {
+            BungeePerms.getInstance().getDebug().log(ex);
+            return;
+        }
+        if (config.isDebug())
+        {
+            BungeePerms.getLogger().info("changes=" + changes);
+        }
+
+        for (NetworkChange c : changes)
+        {
+            try
+            {
+                if (c.getType() == NetworkChange.Type.RELOAD_ALL)
+                {
+                    Runnable r = new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            BungeePerms.getInstance().reload(false);
+                        }
+                    };
+                    ProxyServer.getInstance().getScheduler().runAsync(BungeePlugin.getInstance(), r);
+                }
+                else
+                {
+                    pm().applyChange(c);
+                }
+            }
+            catch (Exception ex)
+            {
+                BungeePerms.getInstance().getDebug().log(ex);
+            }
+        }
+
+        //forward the changes to network except to the server which made them
+        BungeePerms.getInstance().getNetworkNotifier().sendChanges(changes, origin);
+    }
+
     private PermissionsManager pm()
     {
         return BungeePerms.getInstance().getPermissionsManager();
@@ -1,9 +1,20 @@
 package net.alpenblock.bungeeperms.platform.bungee;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import lombok.RequiredArgsConstructor;
 import net.alpenblock.bungeeperms.BungeePerms;
 import net.alpenblock.bungeeperms.Group;
+import net.alpenblock.bungeeperms.NetworkChange;
+import net.alpenblock.bungeeperms.NetworkChange.Type;
 import net.alpenblock.bungeeperms.Statics;
 import net.alpenblock.bungeeperms.User;
 import net.alpenblock.bungeeperms.platform.NetworkNotifier;
@@ -11,148 +22,223 @@ import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 
+/**
+ * Sends the changes to the bukkit servers.
+ * <p>
+ * Queued changes are sent 50ms after the first of them, so a bulk edit reaches each server as a few frames instead of
+ * a message per change. Changes of a user only go to the server the user is on. Servers which did not announce that
+ * they read frames, e.g. ones with an older version, get the text messages instead.
+ */
 @RequiredArgsConstructor
 public class BungeeNotifier implements NetworkNotifier
 {
 
     private final BungeeConfig config;
 
-    @Override
-    public void deleteUser(User u, String origin)
+    //names of the servers which read frames; a server which is downgraded keeps its entry until bungee restarts
+    private final Set<String> frameservers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private List<NetworkChange> pending = new ArrayList<>();
+    private final Runnable flush = new Runnable()
     {
-        if (config.isUseUUIDs())
+        @Override
+        public void run()
         {
-            sendPM(u.getUUID(), "deleteUser;" + u.getUUID(), origin);
-        }
-        else
-        {
-            sendPM(u.getName(), "deleteUser;" + u.getName(), origin);
+            List<NetworkChange> changes;
+            synchronized (BungeeNotifier.this)
+            {
+                changes = pending;
+                pending = new ArrayList<>();
+            }
+            sendChanges(changes, null);
         }
+    };
+
+    @Override
+    public void deleteUser(User u, String origin)
+    {
+        send(NetworkChange.user(Type.USER_DELETE, u, null, null, null), origin);
     }
 
     @Override
     public void deleteGroup(Group g, String origin)
     {
-        sendPMAll("deleteGroup;" + g.getName(), origin);
+        send(NetworkChange.group(Type.GROUP_DELETE, g, null, null, null), origin);
     }
 
     @Override
     public void reloadUser(User u, String origin)
     {
-        if (config.isUseUUIDs())
-        {
-            sendPM(u.getUUID(), "reloadUser;" + u.getUUID(), origin);
-        }
-        else
-        {
-            sendPM(u.getName(), "reloadUser;" + u.getName(), origin);
-        }
+        send(NetworkChange.user(Type.USER_RELOAD, u, null, null, null), origin);
     }
 
     @Override
     public void reloadGroup(Group g, String origin)
     {
-        sendPMAll("reloadGroup;" + g.getName(), origin);
+        send(NetworkChange.group(Type.GROUP_RELOAD, g, null, null, null), origin);
     }
 
     @Override
     public void reloadUsers(String origin)
     {
-        sendPMAll("reloadUsers", origin);
+        send(NetworkChange.all(Type.RELOAD_USERS), origin);
     }
 
     @Override
     public void reloadGroups(String origin)
     {
-        sendPMAll("reloadGroups", origin);
+        send(NetworkChange.all(Type.RELOAD_GROUPS), origin);
     }
 
     @Override
     public void reloadAll(String origin)
     {
-        sendPMAll("reloadall", origin);
+        send(NetworkChange.all(Type.RELOAD_ALL), origin);
     }
 
-    public void sendUUIDAndPlayer(String name, UUID uuid)
+    @Override
+    public void sendChange(NetworkChange change)
     {
-        if (config.isUseUUIDs())
+        //if standalone no network messages
+        if (config.getNetworkType() == NetworkType.Standalone)
         {
-            sendPM(uuid, "uuidcheck;" + name + ";" + uuid, null);
+            return;
+        }
+
+        boolean schedule;
+        synchronized (this)
+        {
+            pending.add(change);
+            schedule = pending.size() == 1;
+        }
+        if (schedule)
+        {
+            ProxyServer.getInstance().getScheduler().schedule(BungeePlugin.getInstance(), flush, 50, TimeUnit.MILLISECONDS);
         }
     }
 
-    //bukkit-bungeeperms reload information functions
-    private void sendPM(String player, String msg, String origin)
+    @Override
+    public void sendChanges(List<NetworkChange> changes, String origin)
     {
         //if standalone no network messages
-        if (config.getNetworkType() == NetworkType.Standalone)
+        if (config.getNetworkType() == NetworkType.Standalone || changes.isEmpty())
         {
             return;
         }
 
-        ProxiedPlayer pp = ProxyServer.getInstance().getPlayer(player);
-        if (pp != null && pp.getServer() != null)
+        //server -> its changes in the order they were made
+        Map<ServerInfo, List<NetworkChange>> byserver = new LinkedHashMap<>();
+        for (NetworkChange c : changes)
         {
-            //ignore servers not in config and netork type is server dependend
-            if (config.getNetworkType() == NetworkType.ServerDependend
-                    && !Statics.listContains(config.getNetworkServers(), pp.getServer().getInfo().getName()))
+            if (c.getType().getKind() == NetworkChange.Kind.USER)
             {
-                return;
+                ProxiedPlayer pp = config.isUseUUIDs() ? ProxyServer.getInstance().getPlayer(UUID.fromString(c.getTarget())) : ProxyServer.getInstance().getPlayer(c.getTarget());
+                if (pp != null && pp.getServer() != null)
+                {
+                    add(byserver, pp.getServer().getInfo(), c, origin);
+                }
             }
-            if (config.getNetworkType() == NetworkType.ServerDependendBlacklist
-                    && Statics.listContains(config.getNetworkServers(), pp.getServer().getInfo().getName()))
+            else
             {
-                return;
+                for (ServerInfo si : ProxyServer.getInstance().getConfig().getServers().values())
+                {
+                    add(byserver, si, c, origin);
+                }
             }
+        }
 
-            //no feedback loop
-            if (origin != null && pp.getServer().getInfo().getName().equalsIgnoreCase(origin))
+        for (Map.Entry<ServerInfo, List<NetworkChange>> e : byserver.entrySet())
+        {
+            if (frameservers.contains(e.getKey().getName()))
             {
-                return;
+                for (byte[] frame : NetworkChange.encode(e.getValue()))
+                {
+                    e.getKey().sendData(BungeePerms.CHANNEL, frame);
+                }
+            }
+            else
+            {
+                //the changes of a bulk edit become the same few reloads
+                Set<String> msgs = new LinkedHashSet<>();
+                for (NetworkChange c : e.getValue())
+                {
+                    msgs.add(c.toMessage());
+                }
+                for (String msg : msgs)
+                {
+                    e.getKey().sendData(BungeePerms.CHANNEL, msg.getBytes());
+                }
             }
+            sendConfig(e.getKey());
+        }
+    }
 
-            //send message
-            pp.getServer().getInfo().sendData(BungeePerms.CHANNEL, msg.getBytes());
-            sendConfig(pp.getServer().getInfo());
+    /**
+     * Marks a server as reading frames and tells it that bungee reads them too.
+     *
+     * @param si the server which announced it
+     */
+    public void addFrameServer(ServerInfo si)
+    {
+        frameservers.add(si.getName());
+        si.sendData(BungeePerms.CHANNEL, NetworkChange.announcement().getBytes());
+    }
+
+    public void sendUUIDAndPlayer(String name, UUID uuid)
+    {
+        if (config.isUseUUIDs())
+        {
+            sendPM(uuid, "uuidcheck;" + name + ";" + uuid, null);
         }
     }
 
-    private void sendPM(UUID player, String msg, String origin)
+    private void send(NetworkChange change, String origin)
     {
-        //if standalone no network messages
-        if (config.getNetworkType() == NetworkType.Standalone)
+        if (origin == null)
         {
-            return;
+            sendChange(change);
+        }
+        else
+        {
+            sendChanges(Collections.singletonList(change), origin);
         }
+    }
 
-        ProxiedPlayer pp = ProxyServer.getInstance().getPlayer(player);
-        if (pp != null && pp.getServer() != null)
+    private void add(Map<ServerInfo, List<NetworkChange>> byserver, ServerInfo si, NetworkChange change, String origin)
+    {
+        if (!isReceiver(si, origin))
         {
-            //ignore servers not in config and netork type is server dependend
-            if (config.getNetworkType() == NetworkType.ServerDependend
-                    && !Statics.listContains(config.getNetworkServers(), pp.getServer().getInfo().getName()))
-            {
-                return;
-            }
-            if (config.getNetworkType() == NetworkType.ServerDependendBlacklist
-                    && Statics.listContains(config.getNetworkServers(), pp.getServer().getInfo().getName()))
-            {
-                return;
-            }
+            return;
+        }
 
-            //no feedback loop
-            if (origin != null && pp.getServer().getInfo().getName().equalsIgnoreCase(origin))
-            {
-                return;
-            }
+        List<NetworkChange> l = byserver.get(si);
+        if (l == null)
+        {
+            l = new ArrayList<>();
+            byserver.put(si, l);
+        }
+        l.add(change);
+    }
 
-            //send message
-            pp.getServer().getInfo().sendData(BungeePerms.CHANNEL, msg.getBytes());
-            sendConfig(pp.getServer().getInfo());
+    private boolean isReceiver(ServerInfo si, String origin)
+    {
+        //ignore servers not in config and netork type is server dependend
+        if (config.getNetworkType() == NetworkType.ServerDependend
+                && !Statics.listContains(config.getNetworkServers(), si.getName()))
+        {
+            return false;
         }
+        if (config.getNetworkType() == NetworkType.ServerDependendBlacklist
+                && Statics.listContains(config.getNetworkServers(), si.getName()))
+        {
+            return false;
+        }
+
+        //no feedback loop
+        return origin == null || !si.getName().equalsIgnoreCase(origin);
     }
 
-    private void sendPMAll(String msg, String origin)
+    //bukkit-bungeeperms reload information functions
+    private void sendPM(UUID player, String msg, String origin)
     {
         //if standalone no network messages
         if (config.getNetworkType() == NetworkType.Standalone)
@@ -160,29 +246,17 @@ public class BungeeNotifier implements NetworkNotifier
             return;
         }
 
-        for (ServerInfo si : ProxyServer.getInstance().getConfig().getServers().values())
+        ProxiedPlayer pp = ProxyServer.getInstance().getPlayer(player);
+        if (pp != null && pp.getServer() != null)
         {
-            //ignore servers not in config and netork type is server dependend
-            if (config.getNetworkType() == NetworkType.ServerDependend
-                    && !Statics.listContains(config.getNetworkServers(), si.getName()))
-            {
-                return;
-            }
-            if (config.getNetworkType() == NetworkType.ServerDependendBlacklist
-                    && Statics.listContains(config.getNetworkServers(), si.getName()))
+            if (!isReceiver(pp.getServer().getInfo(), origin))
             {
                 return;
             }
 
-            //no feedback loop
-            if (origin != null && si.getName().equalsIgnoreCase(origin))
-            {
-                continue;
-            }
-
             //send message
-            si.sendData(BungeePerms.CHANNEL, msg.getBytes());
-            sendConfig(si);
+            pp.getServer().getInfo().sendData(BungeePerms.CHANNEL, msg.getBytes());
+            sendConfig(pp.getServer().getInfo());
         }
     }
 
@@ -116,7 +116,7 @@ public class BungeePermissionsChecker extends PermissionsChecker
             }
 
             //per server and world
-            String world = BungeePlugin.getInstance().getListener().getPlayerWorlds().get(sender.getName());
+            String world = BungeePlugin.getInstance().getListener().getPlayerContexts().getWorld(((ProxiedPlayer) sender).getUniqueId());
             if (world == null)
             {
                 return user.hasPermOnServer(permission, ((ProxiedPlayer) sender).getServer().getInfo().getName());
@@ -145,7 +145,7 @@ public class BungeePermissionsChecker extends PermissionsChecker
             }
 
             //per server and world
-            String world = BungeePlugin.getInstance().getListener().getPlayerWorlds().get(sender.getName());
+            String world = BungeePlugin.getInstance().getListener().getPlayerContexts().getWorld(((ProxiedPlayer) sender).getUniqueId());
             if (world == null)
             {
                 return user.hasPermOnServer(permission, ((ProxiedPlayer) sender).getServer().getInfo().getName());
@@ -227,4 +227,11 @@ public class BungeePlugin extends Plugin implements PlatformPlugin
     {
         ProxyServer.getInstance().getScheduler().cancel(id);
     }
+
+    @Override
+    public boolean isMainThread()
+    {
+        //events and commands run on pooled threads
+        return false;
+    }
 }
@@ -80,8 +80,12 @@ public class BungeeSender implements Sender
     @Override
     public String getWorld()
     {
+        if (!(sender instanceof ProxiedPlayer))
+        {
+            return null;
+        }
         BungeeEventListener l = (BungeeEventListener) BungeePerms.getInstance().getEventListener();
-        return l.getPlayerWorlds().get(sender.getName());
+        return l.getPlayerContexts().getWorld(((ProxiedPlayer) sender).getUniqueId());
     }
 
     @Override
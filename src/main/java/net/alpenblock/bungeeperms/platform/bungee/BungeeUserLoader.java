@@ -0,0 +1,277 @@
+package net.alpenblock.bungeeperms.platform.bungee;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.alpenblock.bungeeperms.BungeePerms;
+import net.alpenblock.bungeeperms.PermissionsManager;
+import net.alpenblock.bungeeperms.Statics;
+import net.alpenblock.bungeeperms.User;
+
+/**
+ * Loads users from the backend on a bounded pool of worker threads.
+ * <p>
+ * Concurrent loads of the same user are merged into one backend query. If the queue is full the load fails at once
+ * instead of blocking the calling login thread.
+ */
+public class BungeeUserLoader
+{
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<Object, Load> loads = new ConcurrentHashMap<>();
+
+    //metrics
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong loadTime = new AtomicLong();
+    private final AtomicLong maxLoadTime = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public BungeeUserLoader(int threads, int queuesize)
+    {
+        final AtomicInteger threadnumber = new AtomicInteger();
+        ThreadFactory factory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "BungeePerms User Loader #" + threadnumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue<Runnable>(Math.max(1, queuesize)), factory,
+                                          new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Loads a user from the backend. The callback is called on a loader thread once the user is loaded, or on the
+     * calling thread if the load could not be queued.
+     *
+     * @param name the name of the user
+     * @param uuid the uuid of the user or null if uuids are not used
+     * @param callback the callback to receive the user or the failure
+     */
+    public void load(String name, UUID uuid, Callback callback)
+    {
+        Object key = uuid != null ? uuid : Statics.toLower(name);
+
+        Load load = new Load(key, name, uuid);
+        Load running = loads.putIfAbsent(key, load);
+        if (running != null)
+        {
+            //already loading; share the result
+            running.addCallback(callback);
+            return;
+        }
+
+        load.addCallback(callback);
+        try
+        {
+            executor.execute(load);
+        }
+        catch (RejectedExecutionException e)
+        {
+            //queue full or shut down
+            loads.remove(key, load);
+            load.complete(null, e);
+        }
+    }
+
+    /**
+     * Stops the loader threads. Queued loads are still processed.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * Records a login which was not loaded in time.
+     */
+    public void timeout()
+    {
+        timeouts.incrementAndGet();
+    }
+
+    public int getQueueDepth()
+    {
+        return executor.getQueue().size();
+    }
+
+    public int getRunningLoads()
+    {
+        return loads.size();
+    }
+
+    public long getLoadCount()
+    {
+        return loadCount.get();
+    }
+
+    /**
+     * Gets the average time a backend load took.
+     *
+     * @return the average load time in milliseconds
+     */
+    public double getAverageLoadTime()
+    {
+        long count = loadCount.get();
+        return count == 0 ? 0 : loadTime.get() / (double) count / 1000000D;
+    }
+
+    /**
+     * Gets the longest time a backend load took.
+     *
+     * @return the maximum load time in milliseconds
+     */
+    public double getMaxLoadTime()
+    {
+        return maxLoadTime.get() / 1000000D;
+    }
+
+    public long getTimeouts()
+    {
+        return timeouts.get();
+    }
+
+    public static interface Callback
+    {
+
+        /**
+         * Called when the user was loaded.
+         *
+         * @param u the user or null if the user does not exist
+         */
+        public void loaded(User u);
+
+        /**
+         * Called when the user could not be loaded. It is unknown whether the user exists.
+         *
+         * @param e the cause
+         */
+        public void failed(Exception e);
+    }
+
+    private class Load implements Runnable
+    {
+
+        private final Object key;
+        private final String name;
+        private final UUID uuid;
+
+        private final List<Callback> callbacks = new ArrayList<>();
+        private boolean done;
+        private User result;
+        private Exception failure;
+
+        private Load(Object key, String name, UUID uuid)
+        {
+            this.key = key;
+            this.name = name;
+            this.uuid = uuid;
+        }
+
+        private void addCallback(Callback c)
+        {
+            synchronized (this)
+            {
+                if (!done)
+                {
+                    callbacks.add(c);
+                    return;
+                }
+            }
+            deliver(c);
+        }
+
+        @Override
+        public void run()
+        {
+            long start = System.nanoTime();
+            User u = null;
+            Exception failure = null;
+            try
+            {
+                PermissionsManager pm = BungeePerms.getInstance().getPermissionsManager();
+                if (uuid != null)
+                {
+                    //update uuid player db
+                    pm.getUUIDPlayerDB().update(uuid, name);
+
+                    u = pm.getBackEnd().loadUser(uuid);
+                }
+                else
+                {
+                    u = pm.getBackEnd().loadUser(name);
+                }
+            }
+            catch (Exception e)
+            {
+                BungeePerms.getInstance().getDebug().log(e);
+                failure = e;
+            }
+            finally
+            {
+                loads.remove(key, this);
+
+                long time = System.nanoTime() - start;
+                loadCount.incrementAndGet();
+                loadTime.addAndGet(time);
+                long max = maxLoadTime.get();
+                while (time > max && !maxLoadTime.compareAndSet(max, time))
+                {
+                    max = maxLoadTime.get();
+                }
+            }
+
+            complete(u, failure);
+        }
+
+        private void complete(User u, Exception failure)
+        {
+            List<Callback> l;
+            synchronized (this)
+            {
+                done = true;
+                result = u;
+                this.failure = failure;
+                l = new ArrayList<>(callbacks);
+                callbacks.clear();
+            }
+            for (Callback c : l)
+            {
+                deliver(c);
+            }
+        }
+
+        private void deliver(Callback c)
+        {
+            try
+            {
+                if (failure != null)
+                {
+                    c.failed(failure);
+                }
+                else
+                {
+                    c.loaded(result);
+                }
+            }
+            catch (Exception e)
+            {
+                BungeePerms.getInstance().getDebug().log(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package net.alpenblock.bungeeperms.platform.bungee;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import net.alpenblock.bungeeperms.Context;
+
+/**
+ * Server and world of the online players.
+ * <p>
+ * Written by the event threads and read without locks by the permission checks. The contexts are the canonical ones
+ * used by the permission caches. Listeners are told about each change of a context.
+ */
+public class PlayerContextStore
+{
+
+    private final ConcurrentHashMap<UUID, Context> contexts = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<ContextListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Gets the context of a player.
+     *
+     * @param uuid the uuid of the player
+     * @return the context or null if the player is not connected to a server
+     */
+    public Context get(UUID uuid)
+    {
+        return uuid == null ? null : contexts.get(uuid);
+    }
+
+    /**
+     * Gets the world of a player.
+     *
+     * @param uuid the uuid of the player
+     * @return the lower case world or null if it is not known yet
+     */
+    public String getWorld(UUID uuid)
+    {
+        Context c = get(uuid);
+        return c == null ? null : c.getWorld();
+    }
+
+    /**
+     * Sets the context of a player and notifies the listeners if it changed.
+     *
+     * @param uuid the uuid of the player
+     * @param server the server the player is on
+     * @param world the world the player is in or null if not known yet
+     */
+    public void set(UUID uuid, String server, String world)
+    {
+        Context c = Context.of(server, world);
+        Context old = contexts.put(uuid, c);
+        if (c == old)
+        {
+            return;
+        }
+
+        for (ContextListener l : listeners)
+        {
+            l.contextChanged(uuid, c);
+        }
+    }
+
+    /**
+     * Removes the context of a player.
+     *
+     * @param uuid the uuid of the player
+     */
+    public void remove(UUID uuid)
+    {
+        contexts.remove(uuid);
+    }
+
+    public int size()
+    {
+        return contexts.size();
+    }
+
+    public void addListener(ContextListener l)
+    {
+        listeners.add(l);
+    }
+
+    public void removeListener(ContextListener l)
+    {
+        listeners.remove(l);
+    }
+
+    public static interface ContextListener
+    {
+
+        public void contextChanged(UUID uuid, Context context);
+    }
+}
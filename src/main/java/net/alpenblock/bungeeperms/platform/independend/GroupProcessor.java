@@ -1,17 +1,18 @@
 package net.alpenblock.bungeeperms.platform.independend;
 
+import java.util.ArrayList;
 import java.util.List;
 import net.alpenblock.bungeeperms.BPConfig;
 import net.alpenblock.bungeeperms.BPPermission;
 import net.alpenblock.bungeeperms.BungeePerms;
+import net.alpenblock.bungeeperms.CacheablePreProcessor;
 import net.alpenblock.bungeeperms.Group;
 import net.alpenblock.bungeeperms.PermissionsManager;
-import net.alpenblock.bungeeperms.PermissionsPreProcessor;
 import net.alpenblock.bungeeperms.Statics;
 import net.alpenblock.bungeeperms.User;
 import net.alpenblock.bungeeperms.platform.Sender;
 
-public class GroupProcessor implements PermissionsPreProcessor
+public class GroupProcessor implements CacheablePreProcessor
 {
 
     @Override
@@ -31,10 +32,13 @@ public class GroupProcessor implements PermissionsPreProcessor
                 return perms;
             }
 
+            List<String> ret = new ArrayList<>(u.getGroups().size() + perms.size());
             for (Group g : u.getGroups())
             {
-                perms.add(0, "group." + Statics.toLower(g.getName()));
+                ret.add(0, "group." + Statics.toLower(g.getName()));
             }
+            ret.addAll(perms);
+            return ret;
         }
 
         return perms;
@@ -57,10 +61,13 @@ public class GroupProcessor implements PermissionsPreProcessor
                 return perms;
             }
 
+            List<BPPermission> ret = new ArrayList<>(u.getGroups().size() + perms.size());
             for (Group g : u.getGroups())
             {
-                perms.add(0, new BPPermission("group." + Statics.toLower(g.getName()), "GroupProcessor", true, null, null));
+                ret.add(0, new BPPermission("group." + Statics.toLower(g.getName()), "GroupProcessor", true, null, null));
             }
+            ret.addAll(perms);
+            return ret;
         }
 
         return perms;
@@ -0,0 +1,232 @@
+package net.alpenblock.bungeeperms.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe registry for elements which are iterated often and changed rarely.
+ * <p>
+ * The elements are kept in an immutable snapshot which is replaced on each change. Getting and iterating a snapshot
+ * neither locks nor copies and is not affected by concurrent changes. Lookups go through hash indexes which are
+ * updated together with the snapshot. Elements are compared by identity.
+ *
+ * @param <E> the type of the elements
+ */
+public class SnapshotRegistry<E>
+{
+
+    private final Object lock = new Object();
+    private final List<Index<?, E>> indexes = new ArrayList<>();
+
+    private Object[] elements = new Object[0];
+    private volatile List<E> snapshot = Collections.emptyList();
+
+    /**
+     * Adds an index. Indexes have to be added before any element is added.
+     *
+     * @param <K> the type of the keys
+     * @param index the index to add
+     * @return the index
+     */
+    public <K> Index<K, E> addIndex(Index<K, E> index)
+    {
+        synchronized (lock)
+        {
+            if (elements.length > 0)
+            {
+                throw new IllegalStateException("indexes have to be added before any element");
+            }
+            indexes.add(index);
+            return index;
+        }
+    }
+
+    /**
+     * Gets the current elements. The returned list is unmodifiable and does not change.
+     *
+     * @return a snapshot of the elements
+     */
+    public List<E> snapshot()
+    {
+        return snapshot;
+    }
+
+    public int size()
+    {
+        return snapshot.size();
+    }
+
+    /**
+     * Adds an element unless it is already contained.
+     *
+     * @param e the element to add
+     * @return true if the element was added
+     */
+    public boolean add(E e)
+    {
+        synchronized (lock)
+        {
+            if (indexOf(e) >= 0)
+            {
+                return false;
+            }
+            insert(e);
+            return true;
+        }
+    }
+
+    /**
+     * Adds an element unless the given index already contains an element with the same key.
+     *
+     * @param <K> the type of the keys
+     * @param e the element to add
+     * @param index the index to check
+     * @return the contained element with the same key or e if it was added
+     */
+    public <K> E addIfAbsent(E e, Index<K, E> index)
+    {
+        synchronized (lock)
+        {
+            E contained = index.get(index.key(e));
+            if (contained != null)
+            {
+                return contained;
+            }
+            if (indexOf(e) < 0)
+            {
+                insert(e);
+            }
+            return e;
+        }
+    }
+
+    /**
+     * Removes an element.
+     *
+     * @param e the element to remove
+     * @return true if the element was removed
+     */
+    public boolean remove(E e)
+    {
+        synchronized (lock)
+        {
+            int i = indexOf(e);
+            if (i < 0)
+            {
+                return false;
+            }
+
+            Object[] n = new Object[elements.length - 1];
+            System.arraycopy(elements, 0, n, 0, i);
+            System.arraycopy(elements, i + 1, n, i, elements.length - i - 1);
+            for (Index<?, E> index : indexes)
+            {
+                index.remove(e);
+            }
+            publish(n);
+            return true;
+        }
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear()
+    {
+        synchronized (lock)
+        {
+            for (Index<?, E> index : indexes)
+            {
+                index.map.clear();
+            }
+            publish(new Object[0]);
+        }
+    }
+
+    private void insert(E e)
+    {
+        Object[] n = Arrays.copyOf(elements, elements.length + 1);
+        n[elements.length] = e;
+        for (Index<?, E> index : indexes)
+        {
+            index.put(e);
+        }
+        publish(n);
+    }
+
+    private int indexOf(E e)
+    {
+        for (int i = 0; i < elements.length; i++)
+        {
+            if (elements[i] == e)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void publish(Object[] n)
+    {
+        elements = n;
+        snapshot = (List<E>) Collections.unmodifiableList(Arrays.asList(n));
+    }
+
+    /**
+     * Hash index of the elements of a registry. Elements without key are not indexed.
+     *
+     * @param <K> the type of the keys
+     * @param <E> the type of the elements
+     */
+    public abstract static class Index<K, E>
+    {
+
+        private final ConcurrentHashMap<K, E> map = new ConcurrentHashMap<>();
+
+        /**
+         * Gets the key of an element.
+         *
+         * @param e the element
+         * @return the key or null if the element should not be indexed
+         */
+        protected abstract K key(E e);
+
+        /**
+         * Gets the element with the given key.
+         *
+         * @param key the key
+         * @return the element or null
+         */
+        public E get(K key)
+        {
+            return key == null ? null : map.get(key);
+        }
+
+        public int size()
+        {
+            return map.size();
+        }
+
+        private void put(E e)
+        {
+            K key = key(e);
+            if (key != null)
+            {
+                map.put(key, e);
+            }
+        }
+
+        private void remove(E e)
+        {
+            K key = key(e);
+            if (key != null)
+            {
+                map.remove(key, e);
+            }
+        }
+    }
+}
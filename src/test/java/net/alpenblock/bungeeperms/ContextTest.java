@@ -0,0 +1,42 @@
+package net.alpenblock.bungeeperms;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ContextTest
+{
+
+    @Test
+    public void testCanonical()
+    {
+        Context server = Context.of("Lobby");
+        assertSame(server, Context.of("lobby"));
+        assertSame(server, Context.of("LOBBY", null));
+        assertEquals("lobby", server.getServer());
+        assertNull(server.getWorld());
+
+        Context world = Context.of("lobby", "World");
+        assertSame(world, Context.of("LOBBY", "world"));
+        assertEquals("lobby", world.getServer());
+        assertEquals("world", world.getWorld());
+        assertNotSame(world, Context.of("other", "world"));
+    }
+
+    @Test
+    public void testGlobal()
+    {
+        assertSame(Context.GLOBAL, Context.of(null));
+        assertSame(Context.GLOBAL, Context.of(null, "world"));
+        assertNull(Context.GLOBAL.getServer());
+    }
+
+    @Test
+    public void testIsIn()
+    {
+        Context server = Context.of("lobby");
+        assertTrue(server.isIn(server));
+        assertTrue(Context.of("lobby", "world").isIn(server));
+        assertFalse(Context.of("other", "world").isIn(server));
+        assertFalse(server.isIn(Context.GLOBAL));
+    }
+}
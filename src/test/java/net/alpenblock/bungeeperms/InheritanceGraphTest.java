@@ -0,0 +1,53 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class InheritanceGraphTest
+{
+
+    @Test
+    public void testRankChangeFlipsMergeOrder()
+    {
+        Group deny = group("deny", 10, new ArrayList<String>(), "-some.node");
+        Group allow = group("allow", 20, new ArrayList<String>(), "some.node");
+        Group child = group("child", 30, Arrays.asList("Deny", "allow"));
+        List<Group> groups = new ArrayList<>(Arrays.asList(child, deny, allow));
+        Collections.sort(groups);
+
+        assertEquals(Arrays.asList(allow, deny), new InheritanceGraph(groups).getInheritances(child));
+        assertFalse(has(new InheritanceGraph(groups), child, "some.node"));
+
+        //swap the ranks; the last inherited group wins
+        deny.setRank(20);
+        allow.setRank(10);
+        Collections.sort(groups);
+
+        assertEquals(Arrays.asList(deny, allow), new InheritanceGraph(groups).getInheritances(child));
+        assertTrue(has(new InheritanceGraph(groups), child, "some.node"));
+    }
+
+    private static Group group(String name, int rank, List<String> inheritances, String... perms)
+    {
+        return new Group(name, new ArrayList<>(inheritances), new ArrayList<>(Arrays.asList(perms)), new HashMap<String, Server>(), rank, 0, "default", false, null, null, null);
+    }
+
+    private static boolean has(InheritanceGraph graph, Group g, String perm)
+    {
+        List<String> perms = new ArrayList<>();
+        for (Group ig : graph.getInheritances(g))
+        {
+            perms.addAll(ig.getPerms());
+        }
+        perms.addAll(g.getPerms());
+
+        PermissionsResolver resolver = new PermissionsResolver();
+        resolver.setUseRegex(false);
+        return Boolean.TRUE.equals(resolver.has(perms, perm));
+    }
+}
@@ -0,0 +1,94 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import net.alpenblock.bungeeperms.NetworkChange.Type;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class NetworkChangeTest
+{
+
+    private final Group group = new Group("Admin", new ArrayList<String>(), new ArrayList<String>(), new HashMap<String, Server>(), 0, 0, "default", false, null, null, null);
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        List<NetworkChange> changes = Arrays.asList(
+                NetworkChange.group(Type.GROUP_ADD_PERM, group, "Lobby", "World", "a.b"),
+                NetworkChange.group(Type.GROUP_PREFIX, group, null, null, null),
+                NetworkChange.all(Type.RELOAD_USERS));
+
+        List<byte[]> frames = NetworkChange.encode(changes);
+        assertEquals(1, frames.size());
+        assertTrue(NetworkChange.isFrame(frames.get(0)));
+        assertFalse(NetworkChange.isFrame("reloadGroup;Admin".getBytes()));
+
+        List<NetworkChange> decoded = NetworkChange.decode(frames.get(0));
+        assertEquals(3, decoded.size());
+        NetworkChange c = decoded.get(0);
+        assertEquals(Type.GROUP_ADD_PERM, c.getType());
+        assertEquals("Admin", c.getTarget());
+        assertEquals("lobby", c.getServer());
+        assertEquals("world", c.getWorld());
+        assertEquals("a.b", c.getValue());
+        assertNull(decoded.get(1).getValue());
+        assertEquals(Type.RELOAD_USERS, decoded.get(2).getType());
+    }
+
+    @Test
+    public void testLargeBatchesAreSplit() throws Exception
+    {
+        List<NetworkChange> changes = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+        {
+            changes.add(NetworkChange.group(Type.GROUP_ADD_PERM, group, null, null, "some.permission.node." + i));
+        }
+
+        List<NetworkChange> decoded = new ArrayList<>();
+        List<byte[]> frames = NetworkChange.encode(changes);
+        assertTrue(frames.size() > 1);
+        for (byte[] frame : frames)
+        {
+            assertTrue(frame.length <= NetworkChange.MAX_FRAME_SIZE);
+            decoded.addAll(NetworkChange.decode(frame));
+        }
+        assertEquals(changes.size(), decoded.size());
+        assertEquals("some.permission.node.4999", decoded.get(4999).getValue());
+    }
+
+    @Test
+    public void testTooLargeChangesAreReloads() throws Exception
+    {
+        char[] prefix = new char[40000];
+        Arrays.fill(prefix, 'x');
+        List<byte[]> frames = NetworkChange.encode(Arrays.asList(NetworkChange.group(Type.GROUP_PREFIX, group, null, null, new String(prefix))));
+
+        NetworkChange c = NetworkChange.decode(frames.get(0)).get(0);
+        assertEquals(Type.GROUP_RELOAD, c.getType());
+        assertEquals("Admin", c.getTarget());
+    }
+
+    @Test
+    public void testTextMessages()
+    {
+        assertEquals("reloadGroup;Admin", NetworkChange.group(Type.GROUP_ADD_PERM, group, null, null, "a.b").toMessage());
+        assertEquals("deleteGroup;Admin", NetworkChange.group(Type.GROUP_DELETE, group, null, null, null).toMessage());
+        assertEquals("reloadall", NetworkChange.all(Type.RELOAD_ALL).toMessage());
+        assertEquals("frames;1", NetworkChange.announcement());
+    }
+
+    @Test
+    public void testUnknownTypesAreSkipped() throws Exception
+    {
+        byte[] frame = NetworkChange.encode(Arrays.asList(NetworkChange.all(Type.RELOAD_GROUPS), NetworkChange.all(Type.RELOAD_USERS))).get(0);
+        //the first change is at offset 4; 255 is no type
+        frame[4] = (byte) 255;
+
+        List<NetworkChange> decoded = NetworkChange.decode(frame);
+        assertEquals(1, decoded.size());
+        assertEquals(Type.RELOAD_USERS, decoded.get(0).getType());
+    }
+}
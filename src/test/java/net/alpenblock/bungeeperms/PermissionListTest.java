@@ -0,0 +1,54 @@
+package net.alpenblock.bungeeperms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PermissionListTest
+{
+
+    @Test
+    public void testListOperations()
+    {
+        List<String> l = new PermissionList();
+        l.add("a.b");
+        l.add("-c.d");
+        l.add(0, "e.*");
+        assertEquals(Arrays.asList("e.*", "a.b", "-c.d"), l);
+
+        assertTrue(l.contains("a.b"));
+        assertFalse(l.contains("never.used.node"));
+        assertEquals(2, l.indexOf("-c.d"));
+
+        assertTrue(l.remove("a.b"));
+        assertEquals("e.*", l.set(0, "f"));
+        assertEquals(Arrays.asList("f", "-c.d"), l);
+        assertEquals(Arrays.asList("f", "-c.d").hashCode(), l.hashCode());
+    }
+
+    @Test
+    public void testNodesAreShared()
+    {
+        List<String> a = new PermissionList(Arrays.asList(new String("shared.node")));
+        List<String> b = new PermissionList(Arrays.asList(new String("shared.node")));
+        assertSame(a.get(0), b.get(0));
+    }
+
+    @Test
+    public void testSharedLists()
+    {
+        PermissionList a = PermissionList.shared(new ArrayList<>(Arrays.asList("x", "y")));
+        PermissionList b = PermissionList.shared(new PermissionList(Arrays.asList("x", "y")));
+        assertSame(a, b);
+        assertTrue(a.isShared());
+        assertNotSame(a, PermissionList.shared(Arrays.asList("y", "x")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSharedListsAreImmutable()
+    {
+        PermissionList.shared(Arrays.asList("x")).add("y");
+    }
+}
@@ -8,6 +8,7 @@ package net.alpenblock.bungeeperms;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -176,7 +177,90 @@ public class PermissionsResolverTest
         
         assertFalse(resolver.has(perms, perm));
     }
-    
+
+    @Test
+    public void testCompiled1()
+    {
+        String perm="test.test1.test2";
+        List<String> perms=new ArrayList<>();
+        perms.add("test.test1.test2");
+        perms.add("-test.*");
+        perms.add("test.*");
+        perms.add("-test.test1.*");
+
+        assertFalse(new PermissionsTrie(perms).has(perm));
+
+        perms.add("*");
+
+        assertTrue(new PermissionsTrie(perms).has(perm));
+    }
+    @Test
+    public void testCompiled2()
+    {
+        List<String> perms=new ArrayList<>();
+        perms.add("test.*");
+        perms.add("-test.test1");
+        perms.add("-other.*");
+        perms.add("other.test1.test2");
+
+        PermissionsTrie trie=new PermissionsTrie(perms);
+
+        assertTrue(trie.has("test.test2"));
+        assertTrue(trie.has("test"));
+        assertFalse(trie.has("test.test1"));
+        assertTrue(trie.has("test.test1.test2"));
+        assertFalse(trie.has("other.test1"));
+        assertTrue(trie.has("other.test1.test2"));
+        assertNull(trie.has("different.test1"));
+    }
+    @Test
+    public void testCompiledSameAsList()
+    {
+        String[] nodes={"test","test1","test2","*","-test","-*"};
+        String[] checks={"test","test.test1","test.test1.test2","test.test2","test2.test1","test.*","test.test1.*","other"};
+        Random random=new Random(0);
+        for(int i=0;i<10000;i++)
+        {
+            List<String> perms=new ArrayList<>();
+            int count=random.nextInt(6);
+            for(int j=0;j<count;j++)
+            {
+                String p=nodes[random.nextInt(nodes.length)];
+                int depth=random.nextInt(3);
+                for(int k=0;k<depth;k++)
+                {
+                    p+="."+nodes[random.nextInt(nodes.length - 2)];
+                }
+                perms.add(p);
+            }
+            PermissionsTrie trie=new PermissionsTrie(perms);
+            for(String check:checks)
+            {
+                assertEquals(perms+" "+check,PermissionsResolver.hasNormal(perms, check),trie.has(check));
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledRegex()
+    {
+        String perm="test.test1.test2";
+        List<String> perms=new ArrayList<>();
+        perms.add("test.test1.(test2|test3)");
+
+        assertTrue(new RegexPermissions(perms).has(perm));
+
+        perms.add("-test.#####.test2");
+
+        assertFalse(new RegexPermissions(perms).has(perm));
+
+        perms.add("test.test1.(test1|*)");
+
+        assertTrue(new RegexPermissions(perms).has(perm));
+        assertEquals(PermissionsResolver.hasRegex(perms, perm),new RegexPermissions(perms).has(perm));
+        assertNull(new RegexPermissions(perms).has("other.test1.test2"));
+    }
+
     @Test
     public void testHasRegex1()
     {
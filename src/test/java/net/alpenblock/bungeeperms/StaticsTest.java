@@ -0,0 +1,75 @@
+package net.alpenblock.bungeeperms;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import lombok.SneakyThrows;
+import static org.junit.Assert.*;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class StaticsTest
+{
+
+    private static class Holder
+    {
+
+        private Object value = "value";
+    }
+
+    @Test
+    @SneakyThrows
+    public void testFieldIsCached()
+    {
+        Field f = Statics.getDeclaredField(Holder.class, "value");
+        assertTrue(f.isAccessible());
+        assertTrue(Statics.getDeclaredField(Holder.class, "value") == f);
+    }
+
+    @Test(expected = NoSuchFieldException.class)
+    @SneakyThrows
+    public void testMissingField()
+    {
+        Statics.getDeclaredField(Holder.class, "missing");
+    }
+
+    @Test
+    public void testGetSetField()
+    {
+        Holder h = new Holder();
+        Statics.setField(h, "new value", "value");
+
+        assertEquals("new value", Statics.getField(h, Object.class, "value"));
+        assertEquals("new value", Statics.replaceField(h, "value", "value"));
+        assertEquals("value", h.value);
+    }
+
+    @Test
+    public void testCachedFieldAccessDoesNotAllocate()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean tbean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(tbean.isThreadAllocatedMemorySupported() && tbean.isThreadAllocatedMemoryEnabled());
+
+        Holder h = new Holder();
+
+        //warm up
+        access(h, 20000);
+
+        long tid = Thread.currentThread().getId();
+        long before = tbean.getThreadAllocatedBytes(tid);
+        access(h, 100000);
+        long cached = tbean.getThreadAllocatedBytes(tid) - before;
+
+        //no field lookup per access
+        assertTrue("allocated " + cached + " bytes", cached < 64 * 1024);
+    }
+
+    private static void access(Holder h, int times)
+    {
+        for (int i = 0; i < times; i++)
+        {
+            Statics.setField(Holder.class, h, "value", "value");
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package net.alpenblock.bungeeperms.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.SneakyThrows;
+import static org.junit.Assert.*;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class SnapshotRegistryTest
+{
+
+    private final SnapshotRegistry<String> r;
+    private final SnapshotRegistry.Index<String, String> byLower;
+
+    public SnapshotRegistryTest()
+    {
+        r = new SnapshotRegistry<>();
+        byLower = r.addIndex(new SnapshotRegistry.Index<String, String>()
+        {
+            @Override
+            protected String key(String e)
+            {
+                return e.toLowerCase();
+            }
+        });
+    }
+
+    @Test
+    public void testAdd()
+    {
+        String s = "string 1";
+        assertTrue(r.add(s));
+        assertFalse(r.add(s));
+
+        assertTrue(r.size() == 1);
+        assertTrue(r.snapshot().get(0) == s);
+        assertTrue(byLower.get("string 1") == s);
+    }
+
+    @Test
+    public void testAddIfAbsent()
+    {
+        String s1 = "String 1";
+        String s2 = "string 1";
+
+        assertTrue(r.addIfAbsent(s1, byLower) == s1);
+        assertTrue(r.addIfAbsent(s2, byLower) == s1);
+        assertTrue(r.size() == 1);
+    }
+
+    @Test
+    public void testRemove()
+    {
+        String s1 = "string 1";
+        String s2 = "string 2";
+        r.add(s1);
+        r.add(s2);
+
+        //identity, not equality
+        assertFalse(r.remove(new String(s1)));
+        assertTrue(r.remove(s1));
+
+        assertTrue(r.size() == 1);
+        assertTrue(r.snapshot().get(0) == s2);
+        assertNull(byLower.get("string 1"));
+        assertTrue(byLower.get("string 2") == s2);
+    }
+
+    @Test
+    public void testClear()
+    {
+        r.add("string 1");
+        r.add("string 2");
+
+        r.clear();
+
+        assertTrue(r.size() == 0);
+        assertTrue(byLower.size() == 0);
+    }
+
+    @Test
+    public void testSnapshotIsStable()
+    {
+        r.add("string 1");
+        List<String> snapshot = r.snapshot();
+
+        r.add("string 2");
+        r.remove("string 1");
+
+        assertTrue(snapshot.size() == 1);
+        assertTrue(snapshot.get(0).equals("string 1"));
+        assertTrue(r.snapshot() == r.snapshot());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsUnmodifiable()
+    {
+        r.add("string 1");
+        r.snapshot().add("string 2");
+    }
+
+    @Test
+    @SneakyThrows
+    public void testConcurrency()
+    {
+        int writercount = 4;
+        int readercount = 4;
+        final int rounds = 2000;
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < writercount; i++)
+        {
+            final int writer = i;
+            writers.add(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < rounds; j++)
+                    {
+                        String s = "w" + writer + "-" + j;
+                        r.add(s);
+                        if (j % 2 == 0)
+                        {
+                            r.remove(s);
+                        }
+                    }
+                }
+            }));
+        }
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < readercount; i++)
+        {
+            readers.add(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while (!stop.get())
+                        {
+                            List<String> snapshot = r.snapshot();
+                            int size = snapshot.size();
+                            int count = 0;
+                            for (String s : snapshot)
+                            {
+                                assertNotNull(s);
+                                count++;
+                            }
+                            assertEquals(size, count);
+                        }
+                    }
+                    catch (Throwable t)
+                    {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+
+        for (Thread t : readers)
+        {
+            t.start();
+        }
+        for (Thread t : writers)
+        {
+            t.start();
+        }
+        for (Thread t : writers)
+        {
+            t.join();
+        }
+        stop.set(true);
+        for (Thread t : readers)
+        {
+            t.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(writercount * rounds / 2, r.size());
+        assertEquals(r.size(), byLower.size());
+        for (String s : r.snapshot())
+        {
+            assertTrue(byLower.get(s) == s);
+        }
+    }
+
+    @Test
+    public void testIterationDoesNotAllocate()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean tbean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(tbean.isThreadAllocatedMemorySupported() && tbean.isThreadAllocatedMemoryEnabled());
+
+        int count = 5000;
+        for (int i = 0; i < count; i++)
+        {
+            r.add("s" + i);
+        }
+
+        //warm up
+        int found = iterate(100);
+
+        long tid = Thread.currentThread().getId();
+        long before = tbean.getThreadAllocatedBytes(tid);
+        found += iterate(1000);
+        long allocated = tbean.getThreadAllocatedBytes(tid) - before;
+
+        assertEquals(1100 * count, found);
+        //copying the list once per iteration would allocate at least 1000 * 5000 references
+        assertTrue("allocated " + allocated + " bytes", allocated < 100 * 1024);
+    }
+
+    private int iterate(int times)
+    {
+        int found = 0;
+        for (int i = 0; i < times; i++)
+        {
+            List<String> snapshot = r.snapshot();
+            for (int j = 0; j < snapshot.size(); j++)
+            {
+                if (snapshot.get(j) != null)
+                {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+}